@@ -0,0 +1,24 @@
+package toby.spring.user.aop.advice;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import toby.spring.user.dao.Deadline;
+
+public class DeadlineAdvice implements MethodInterceptor {
+    private final long timeoutMillis;
+
+    public DeadlineAdvice(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * 타깃 메소드 전체를 timeoutMillis 안에 끝내도록 마감을 걸고, 그 안의 DAO 호출이 남은 시간만큼만 DB 를 기다리게 한다.
+     * 바깥에서 이미 더 이른 마감이 걸려 있으면 그것을 따른다.
+     */
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        try (Deadline.Scope ignored = Deadline.start(timeoutMillis)) {
+            return invocation.proceed();
+        }
+    }
+}
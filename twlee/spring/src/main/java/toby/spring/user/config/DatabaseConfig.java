@@ -6,6 +6,7 @@ import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
 import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
 import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import toby.spring.user.dao.DeadlineAwareJdbcTemplate;
 
 @Configuration
 public class DatabaseConfig {
@@ -16,6 +17,6 @@ public class DatabaseConfig {
                 .setType(EmbeddedDatabaseType.H2)
                 .addScript("schema.sql")
                 .build();
-        return new JdbcTemplate(db);
+        return new DeadlineAwareJdbcTemplate(db);
     }
 }
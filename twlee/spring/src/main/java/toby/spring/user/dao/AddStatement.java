@@ -2,11 +2,10 @@ package toby.spring.user.dao;
 
 import toby.spring.user.domain.User;
 
-import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 
-public class AddStatement implements StatementStrategy {
+public class AddStatement implements BatchStatementStrategy {
     private User user;
 
     public AddStatement(User user) {
@@ -14,11 +13,14 @@ public class AddStatement implements StatementStrategy {
     }
 
     @Override
-    public PreparedStatement makePreparedStatement(Connection conn) throws SQLException {
-        PreparedStatement ps = conn.prepareStatement("insert into users (id, name, password) values (?, ?, ?)");
+    public String getSql() {
+        return "insert into users (id, name, password) values (?, ?, ?)";
+    }
+
+    @Override
+    public void setValues(PreparedStatement ps) throws SQLException {
         ps.setString(1, user.getId());
         ps.setString(2, user.getName());
         ps.setString(3, user.getPassword());
-        return ps;
     }
 }
@@ -0,0 +1,135 @@
+package toby.spring.user.dao;
+
+import toby.spring.user.datasource.StatementCancellation;
+
+import java.lang.reflect.Method;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 블로킹 DAO 호출을 executor 에서 실행하고 CompletableFuture 로 돌려준다.
+ * 동시에 실행되는 DB 작업 수는 maxConcurrency 로 제한한다.
+ * permit 을 얻은 작업만 executor 에 넘기고 나머지는 대기열에 두므로, executor 스레드가 permit 을 기다리며 쌓이지 않는다.
+ * 돌려준 Future 를 cancel 하면 실행 중인 Statement 를 Statement.cancel() 로 멈춘다.
+ * (DAO 가 CancellableDataSource 를 거쳐 커넥션을 얻어야 한다)
+ * 호출한 스레드에 Deadline 이 걸려 있으면 작업 스레드로 넘겨준다.
+ */
+public class AsyncDaoExecutor implements AutoCloseable {
+    private final Executor executor;
+    private final boolean ownsExecutor;
+    private final Semaphore permits;
+    private final int maxConcurrency;
+    private final Queue<Task<?>> pending = new ConcurrentLinkedQueue<>();
+
+    public AsyncDaoExecutor(int maxConcurrency) {
+        this(defaultExecutor(), maxConcurrency, true);
+    }
+
+    public AsyncDaoExecutor(Executor executor, int maxConcurrency) {
+        this(executor, maxConcurrency, false);
+    }
+
+    private AsyncDaoExecutor(Executor executor, int maxConcurrency, boolean ownsExecutor) {
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+        this.maxConcurrency = maxConcurrency;
+        this.permits = new Semaphore(maxConcurrency);
+    }
+
+    /**
+     * 가상 스레드를 쓸 수 있는 JVM(21+)이면 작업마다 가상 스레드를 만들고, 아니면 데몬 스레드 캐시 풀을 쓴다.
+     * 프로젝트는 Java 11 로 컴파일하므로 리플렉션으로 찾는다.
+     */
+    static ExecutorService defaultExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger sequence = new AtomicInteger();
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "async-dao-" + sequence.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    public <T> CompletableFuture<T> submit(Callable<T> task) {
+        Task<T> work = new Task<>(task, Deadline.currentNanos());
+        work.future.whenComplete((result, e) -> {
+            if (work.future.isCancelled()) {
+                work.cancellation.cancel();
+            }
+        });
+        pending.add(work);
+        dispatch();
+        return work.future;
+    }
+
+    /**
+     * permit 이 남아 있는 만큼 대기열의 작업을 executor 에 넘긴다.
+     * 작업을 넣은 쪽과 작업을 끝낸 쪽이 모두 호출하므로 대기열에 남은 작업이 방치되지 않는다.
+     */
+    private void dispatch() {
+        while (!pending.isEmpty() && permits.tryAcquire()) {
+            Task<?> next = pending.poll();
+            if (next == null) {
+                permits.release();
+                continue;
+            }
+            try {
+                executor.execute(next);
+            } catch (RejectedExecutionException e) {
+                permits.release();
+                next.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    private final class Task<T> implements Runnable {
+        private final Callable<T> callable;
+        private final Long deadline;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private final StatementCancellation cancellation = new StatementCancellation();
+
+        private Task(Callable<T> callable, Long deadline) {
+            this.callable = callable;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public void run() {
+            // 호출한 스레드의 마감을 작업 스레드에서도 그대로 적용한다
+            try (Deadline.Scope ignored = Deadline.at(deadline)) {
+                // 대기 중에 취소된 작업은 실행하지 않는다
+                if (!future.isDone()) {
+                    future.complete(cancellation.call(callable));
+                }
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            } finally {
+                permits.release();
+                dispatch();
+            }
+        }
+    }
+
+    public int getActiveCount() {
+        return maxConcurrency - permits.availablePermits();
+    }
+
+    @Override
+    public void close() {
+        if (ownsExecutor) {
+            ((ExecutorService) executor).shutdown();
+        }
+    }
+}
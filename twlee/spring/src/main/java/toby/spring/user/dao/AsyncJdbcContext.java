@@ -0,0 +1,44 @@
+package toby.spring.user.dao;
+
+import org.springframework.jdbc.core.PreparedStatementSetter;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * JdbcContext 의 작업을 AsyncDaoExecutor 에서 실행하는 비동기 파사드.
+ * 각 작업은 별도 스레드에서 실행되므로 호출한 스레드의 트랜잭션에는 참여하지 않는다.
+ */
+public class AsyncJdbcContext {
+    private final JdbcContext jdbcContext;
+    private final AsyncDaoExecutor executor;
+
+    public AsyncJdbcContext(JdbcContext jdbcContext, AsyncDaoExecutor executor) {
+        this.jdbcContext = jdbcContext;
+        this.executor = executor;
+    }
+
+    public CompletableFuture<Void> executeSql(String query) {
+        return executor.submit(() -> {
+            jdbcContext.executeSql(query);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> workWithStatementStrategy(StatementStrategy stmt) {
+        return executor.submit(() -> {
+            jdbcContext.workWithStatementStrategy(stmt);
+            return null;
+        });
+    }
+
+    public CompletableFuture<int[][]> workWithBatch(Iterable<? extends BatchStatementStrategy> strategies) {
+        return executor.submit(() -> jdbcContext.workWithBatch(strategies));
+    }
+
+    /**
+     * 콜백은 작업 스레드에서 호출된다.
+     */
+    public CompletableFuture<Integer> query(String sql, PreparedStatementSetter setter, RowCallback callback) {
+        return executor.submit(() -> jdbcContext.query(sql, setter, callback));
+    }
+}
@@ -0,0 +1,93 @@
+package toby.spring.user.dao;
+
+import toby.spring.user.domain.Level;
+import toby.spring.user.domain.User;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * UserDao 호출을 AsyncDaoExecutor 에서 실행하는 비동기 파사드.
+ * ex) 건수와 목록을 동시에 조회
+ * <pre>
+ * CompletableFuture&lt;Integer&gt; count = asyncUserDao.getCount();
+ * CompletableFuture&lt;List&lt;User&gt;&gt; users = asyncUserDao.getAll();
+ * </pre>
+ */
+public class AsyncUserDao {
+    private final UserDao userDao;
+    private final AsyncDaoExecutor executor;
+
+    public AsyncUserDao(UserDao userDao, AsyncDaoExecutor executor) {
+        this.userDao = userDao;
+        this.executor = executor;
+    }
+
+    public CompletableFuture<Void> add(User user) {
+        return executor.submit(() -> {
+            userDao.add(user);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> addAll(Collection<User> users) {
+        return executor.submit(() -> {
+            userDao.addAll(users);
+            return null;
+        });
+    }
+
+    public CompletableFuture<User> get(String id) {
+        return executor.submit(() -> userDao.get(id));
+    }
+
+    public CompletableFuture<List<User>> getAll() {
+        return executor.submit(userDao::getAll);
+    }
+
+    public CompletableFuture<List<User>> getPage(String afterId, int limit) {
+        return executor.submit(() -> userDao.getPage(afterId, limit));
+    }
+
+    public CompletableFuture<Void> deleteAll() {
+        return executor.submit(() -> {
+            userDao.deleteAll();
+            return null;
+        });
+    }
+
+    public CompletableFuture<Integer> getCount() {
+        return executor.submit(userDao::getCount);
+    }
+
+    public CompletableFuture<Map<Level, Integer>> getCountByLevel() {
+        return executor.submit(userDao::getCountByLevel);
+    }
+
+    public CompletableFuture<Void> update(User user) {
+        return executor.submit(() -> {
+            userDao.update(user);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Integer> upgradeLevels(Collection<User> candidates) {
+        return executor.submit(() -> userDao.upgradeLevels(candidates));
+    }
+
+    public CompletableFuture<Void> updateLevels(List<User> users) {
+        return executor.submit(() -> {
+            userDao.updateLevels(users);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> updateAll(List<User> users) {
+        return executor.submit(() -> {
+            userDao.updateAll(users);
+            return null;
+        });
+    }
+}
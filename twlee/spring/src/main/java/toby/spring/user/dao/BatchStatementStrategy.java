@@ -0,0 +1,22 @@
+package toby.spring.user.dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * SQL 과 파라미터 바인딩을 분리한 StatementStrategy.
+ * 같은 SQL 을 쓰는 전략끼리는 PreparedStatement 하나에 addBatch 로 묶어서 실행할 수 있다.
+ */
+public interface BatchStatementStrategy extends StatementStrategy {
+    String getSql();
+
+    void setValues(PreparedStatement ps) throws SQLException;
+
+    @Override
+    default PreparedStatement makePreparedStatement(Connection conn) throws SQLException {
+        PreparedStatement ps = conn.prepareStatement(getSql());
+        setValues(ps);
+        return ps;
+    }
+}
@@ -17,6 +17,6 @@ public class CountDaoFactory {
 
 //    @Bean
     public ConnectionMaker realConnectionMaker() {
-        return new DConnectionMaker();
+        return new PoolingConnectionMaker(new DConnectionMaker());
     }
 }
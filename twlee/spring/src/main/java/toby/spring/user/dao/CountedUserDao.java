@@ -0,0 +1,383 @@
+package toby.spring.user.dao;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import toby.spring.user.domain.Level;
+import toby.spring.user.domain.User;
+import toby.spring.user.exception.DuplicateUserIdException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * 전체 사용자 수와 등급별 사용자 수를 메모리에 유지해서 getCount / getCountByLevel 을 count(*) 없이 돌려주는 UserDao 데코레이터.
+ * add, addAll, deleteAll 이 바꾼 만큼 건수를 고치고, 트랜잭션 안이면 커밋된 뒤에만 반영한다.
+ * update, updateAll, updateLevels 는 바꾸기 전 등급을 getLevelsForUpdate 로 읽어서 등급별로 옮기고,
+ * upgradeLevels 는 후보의 등급에서 다음 등급으로 옮긴다. 바뀐 행 수가 맞지 않는 등 어디서 어디로 옮겼는지 모를 때만 건수를 무효로 표시한다.
+ * 이 DAO 를 거치지 않은 쓰기는 알 수 없으므로 startReconciliation 으로 주기적으로 DB 와 맞춘다.
+ * DB 에서 세는 동안 이 DAO 의 쓰기가 진행 중이었거나 반영됐다면, 센 값에 그 쓰기가 들어갔는지 알 수 없으므로 메모리 값을 덮어쓰지 않는다.
+ */
+@Slf4j
+public class CountedUserDao implements UserDao, AutoCloseable {
+    private final UserDao userDao;
+    private final Object lock = new Object();
+    private final Map<Level, AtomicLong> counts = new EnumMap<>(Level.class);
+    // 트랜잭션 밖의 수정끼리 이전 등급을 읽고 고치는 사이에 끼어들지 못하게 한다
+    private final Object updateLock = new Object();
+    // lock 으로 보호한다. generation 은 건수가 바뀔 때마다, inFlight 는 DB 에 쓰기 시작해서 건수에 반영되기 전까지 늘어난다
+    private long generation;
+    private int inFlight;
+    private volatile boolean stale = true;
+    private static final int RECONCILE_ATTEMPTS = 3;
+    private static final long RECONCILE_WAIT_MILLIS = 100;
+    private ScheduledExecutorService scheduler;
+
+    public CountedUserDao(UserDao userDao) {
+        this.userDao = userDao;
+        for (Level level : Level.values()) {
+            counts.put(level, new AtomicLong());
+        }
+    }
+
+    public synchronized void startReconciliation(long intervalMillis) {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "user-count-reconciler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::reconcileQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * DB 에서 등급별 건수를 다시 세어 돌려준다.
+     * 세는 동안 이 DAO 의 쓰기가 없었을 때만 메모리 값을 덮어쓴다. 겹쳤다면 진행 중인 쓰기가 반영되기를 잠깐 기다렸다가
+     * RECONCILE_ATTEMPTS 번까지 다시 센다. 트랜잭션 안에서는 자기 쓰기를 기다리게 될 수 있으므로 기다리지 않는다.
+     * 그래도 못 맞추면 메모리 값은 그대로 둔다. 무효 상태가 아니면 메모리 값은 쓰기마다 맞춰지고 있으므로 틀어지지 않는다.
+     */
+    public Map<Level, Integer> reconcile() {
+        boolean mayWait = !TransactionSynchronizationManager.isActualTransactionActive();
+        Map<Level, Integer> actual = null;
+        for (int attempt = 0; attempt < RECONCILE_ATTEMPTS; attempt++) {
+            long seenGeneration;
+            synchronized (lock) {
+                if (attempt > 0 && !(mayWait && awaitWrites())) {
+                    return actual;
+                }
+                seenGeneration = inFlight == 0 ? generation : -1;
+            }
+            actual = userDao.getCountByLevel();
+            synchronized (lock) {
+                if (inFlight == 0 && generation == seenGeneration) {
+                    for (Level level : Level.values()) {
+                        counts.get(level).set(actual.getOrDefault(level, 0));
+                    }
+                    stale = false;
+                    return actual;
+                }
+            }
+        }
+        return actual;
+    }
+
+    // lock 을 잡은 채로 부른다. 진행 중인 쓰기가 모두 반영되면 true, RECONCILE_WAIT_MILLIS 안에 끝나지 않으면 false
+    private boolean awaitWrites() {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(RECONCILE_WAIT_MILLIS);
+        while (inFlight > 0) {
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remaining <= 0) {
+                return false;
+            }
+            try {
+                lock.wait(remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void reconcileQuietly() {
+        try {
+            reconcile();
+        } catch (RuntimeException e) {
+            log.warn("사용자 수를 DB 와 맞추지 못했습니다", e);
+        }
+    }
+
+    @Override
+    public int getCount() {
+        int total = 0;
+        for (Integer count : getCountByLevel().values()) {
+            total += count;
+        }
+        return total;
+    }
+
+    @Override
+    public Map<Level, Integer> getCountByLevel() {
+        if (stale) {
+            return reconcile();
+        }
+        Map<Level, Integer> snapshot = new EnumMap<>(Level.class);
+        synchronized (lock) {
+            counts.forEach((level, count) -> snapshot.put(level, (int) count.get()));
+        }
+        return snapshot;
+    }
+
+    @Override
+    public void add(User user) {
+        write(() -> userDao.add(user), addCounts(Collections.singletonList(user), Collections.emptySet()));
+    }
+
+    @Override
+    public void add_exception(User user) {
+        write(() -> userDao.add_exception(user), addCounts(Collections.singletonList(user), Collections.emptySet()));
+    }
+
+    @Override
+    public void addAll(Collection<User> users) {
+        beginWrite();
+        try {
+            userDao.addAll(users);
+        } catch (DuplicateUserIdException e) {
+            // 중복이 아닌 사용자는 등록됐다
+            endWrite(addCounts(users, new HashSet<>(e.getDuplicateIds())));
+            throw e;
+        } catch (RuntimeException e) {
+            endWrite(this::invalidate);
+            throw e;
+        }
+        endWrite(addCounts(users, Collections.emptySet()));
+    }
+
+    // 커밋 전에 User 가 바뀌어도 영향이 없도록 늘어날 건수를 지금 계산해 둔다
+    private Runnable addCounts(Collection<User> users, Set<String> skipIds) {
+        Map<Level, Integer> added = new EnumMap<>(Level.class);
+        for (User user : users) {
+            if (!skipIds.contains(user.getId())) {
+                added.merge(user.getLevel(), 1, Integer::sum);
+            }
+        }
+        return addDeltas(added);
+    }
+
+    private Runnable addDeltas(Map<Level, Integer> deltas) {
+        return () -> deltas.forEach((level, delta) -> counts.get(level).addAndGet(delta));
+    }
+
+    @Override
+    public void deleteAll() {
+        write(userDao::deleteAll, () -> {
+            counts.values().forEach(count -> count.set(0));
+            stale = false;
+        });
+    }
+
+    @Override
+    public void update(User user) {
+        updateTracking(Collections.singletonList(user), () -> userDao.update(user));
+    }
+
+    @Override
+    public void updateAll(List<User> users) {
+        updateTracking(users, () -> userDao.updateAll(users));
+    }
+
+    @Override
+    public void updateLevels(List<User> users) {
+        updateTracking(users, () -> userDao.updateLevels(users));
+    }
+
+    /**
+     * 바꾸기 전 등급을 읽고 고친 뒤, 등급이 바뀐 사용자만큼 건수를 옮긴다.
+     * 트랜잭션 안이면 select ... for update 의 행 잠금이, 밖이면 updateLock 이 읽은 등급을 고칠 때까지 지킨다.
+     */
+    private void updateTracking(Collection<User> users, Runnable dbWrite) {
+        beginWrite();
+        Runnable change;
+        try {
+            if (TransactionSynchronizationManager.isActualTransactionActive()) {
+                change = readLevelsAndWrite(users, dbWrite);
+            } else {
+                synchronized (updateLock) {
+                    change = readLevelsAndWrite(users, dbWrite);
+                }
+            }
+        } catch (RuntimeException e) {
+            endWrite(this::invalidate);
+            throw e;
+        }
+        endWrite(change);
+    }
+
+    private Runnable readLevelsAndWrite(Collection<User> users, Runnable dbWrite) {
+        List<String> ids = new ArrayList<>(users.size());
+        for (User user : users) {
+            ids.add(user.getId());
+        }
+        // 같은 id 가 여러 번 있으면 앞의 수정이 바꾼 등급에서 다시 옮긴다
+        Map<String, Level> levels = new HashMap<>(userDao.getLevelsForUpdate(ids));
+        Map<Level, Integer> deltas = new EnumMap<>(Level.class);
+        for (User user : users) {
+            Level before = levels.get(user.getId());
+            if (before != null && before != user.getLevel()) {
+                deltas.merge(before, -1, Integer::sum);
+                deltas.merge(user.getLevel(), 1, Integer::sum);
+                levels.put(user.getId(), user.getLevel());
+            }
+        }
+        dbWrite.run();
+        return addDeltas(deltas);
+    }
+
+    /**
+     * 후보의 지금 등급에서 다음 등급으로 건수를 옮긴다. 읽은 뒤 등급이 바뀌어 건너뛴 사용자가 있으면 누구인지 모르므로 무효로 표시한다.
+     */
+    @Override
+    public int upgradeLevels(Collection<User> candidates) {
+        Map<Level, Integer> deltas = new EnumMap<>(Level.class);
+        int expected = 0;
+        for (User candidate : candidates) {
+            Level next = candidate.getLevel().getNext();
+            if (next != null) {
+                deltas.merge(candidate.getLevel(), -1, Integer::sum);
+                deltas.merge(next, 1, Integer::sum);
+                expected++;
+            }
+        }
+        beginWrite();
+        int updated;
+        try {
+            updated = userDao.upgradeLevels(candidates);
+        } catch (RuntimeException e) {
+            endWrite(this::invalidate);
+            throw e;
+        }
+        endWrite(updated == expected ? addDeltas(deltas) : this::invalidate);
+        return updated;
+    }
+
+    @Override
+    public Map<String, Level> getLevelsForUpdate(Collection<String> ids) {
+        return userDao.getLevelsForUpdate(ids);
+    }
+
+    public void invalidate() {
+        synchronized (lock) {
+            stale = true;
+            generation++;
+        }
+    }
+
+    // 실패한 쓰기는 일부만 반영됐을 수 있으므로 건수를 무효로 표시한다
+    private void write(Runnable dbWrite, Runnable change) {
+        beginWrite();
+        try {
+            dbWrite.run();
+        } catch (RuntimeException e) {
+            endWrite(this::invalidate);
+            throw e;
+        }
+        endWrite(change);
+    }
+
+    private void beginWrite() {
+        synchronized (lock) {
+            inFlight++;
+        }
+    }
+
+    /**
+     * 트랜잭션 안이면 커밋된 뒤에 change 를 반영하고, 롤백되면 버린다. 트랜잭션 밖이면 바로 반영한다.
+     */
+    private void endWrite(Runnable change) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            apply(change);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) {
+                    apply(change);
+                } else if (status == STATUS_ROLLED_BACK) {
+                    apply(null);
+                } else {
+                    apply(CountedUserDao.this::invalidate);
+                }
+            }
+        });
+    }
+
+    private void apply(Runnable change) {
+        synchronized (lock) {
+            if (change != null) {
+                change.run();
+            }
+            generation++;
+            inFlight--;
+            lock.notifyAll();
+        }
+    }
+
+    @Override
+    public User get(String id) {
+        return userDao.get(id);
+    }
+
+    @Override
+    public List<User> getAll() {
+        return userDao.getAll();
+    }
+
+    @Override
+    public void forEach(Consumer<User> action) {
+        userDao.forEach(action);
+    }
+
+    @Override
+    public List<User> getPage(String afterId, int limit) {
+        return userDao.getPage(afterId, limit);
+    }
+
+    @Override
+    public void findUpgradeCandidates(int minLoginForSilver, int minRecommendForGold, Consumer<User> action) {
+        userDao.findUpgradeCandidates(minLoginForSilver, minRecommendForGold, action);
+    }
+
+    @Override
+    public boolean spansMultipleDatabases() {
+        return userDao.spansMultipleDatabases();
+    }
+
+    @Override
+    public void lockUpgradeCandidates(int minLoginForSilver, int minRecommendForGold, Consumer<User> action) {
+        userDao.lockUpgradeCandidates(minLoginForSilver, minRecommendForGold, action);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+}
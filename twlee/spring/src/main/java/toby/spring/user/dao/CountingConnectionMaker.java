@@ -1,10 +1,12 @@
 package toby.spring.user.dao;
 
+import toby.spring.user.datasource.ConnectionMetrics;
+
 import java.sql.Connection;
 import java.sql.SQLException;
 
 public class CountingConnectionMaker implements ConnectionMaker {
-    private int count = 0;
+    private final ConnectionMetrics metrics = new ConnectionMetrics();
     private final ConnectionMaker realConnectionMaker;
 
     public CountingConnectionMaker(ConnectionMaker connectionMaker) {
@@ -12,11 +14,20 @@ public class CountingConnectionMaker implements ConnectionMaker {
     }
 
     public Connection makeConnection() throws SQLException, ClassNotFoundException {
-        this.count++;
-        return realConnectionMaker.makeConnection();
+        long start = System.nanoTime();
+        try {
+            return metrics.acquired(realConnectionMaker.makeConnection(), start);
+        } catch (SQLException | ClassNotFoundException | RuntimeException e) {
+            metrics.failed(start);
+            throw e;
+        }
     }
 
     public int getCount() {
-        return count;
+        return (int) metrics.getAcquisitionCount();
+    }
+
+    public ConnectionMetrics.Snapshot getMetrics() {
+        return metrics.snapshot();
     }
 }
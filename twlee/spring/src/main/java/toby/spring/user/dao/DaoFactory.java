@@ -12,6 +12,11 @@ public class DaoFactory {
 
 //    @Bean
     public ConnectionMaker connectionMaker() {
+        return new PoolingConnectionMaker(realConnectionMaker());
+    }
+
+//    @Bean
+    public ConnectionMaker realConnectionMaker() {
         return new DConnectionMaker();
     }
 }
@@ -18,11 +18,12 @@ public class DataFactory {
 
 //    @Bean
     public DataSource dataSource() {
+        H2Settings settings = H2Settings.load();
         SimpleDriverDataSource dataSource = new SimpleDriverDataSource();
         dataSource.setDriverClass(org.h2.Driver.class);
-        dataSource.setUrl("jdbc:h2:tcp://localhost/~/test");
-        dataSource.setUsername("sa");
-        dataSource.setPassword("");
+        dataSource.setUrl(settings.getUrl());
+        dataSource.setUsername(settings.getUsername());
+        dataSource.setPassword(settings.getPassword());
         return dataSource;
     }
 }
@@ -0,0 +1,106 @@
+package toby.spring.user.dao;
+
+import org.springframework.dao.QueryTimeoutException;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 요청이나 서비스 메소드 단위로 정하는 처리 마감 시각. 현재 스레드에 바인딩된다.
+ * DAO 는 남은 시간을 Statement.setQueryTimeout 으로 넘기고, 이미 마감이 지났으면 커넥션을 쓰기 전에 실패한다.
+ * <pre>
+ * try (Deadline.Scope ignored = Deadline.start(500)) {
+ *     userDao.getAll();
+ * }
+ * </pre>
+ */
+public final class Deadline {
+    private static final ThreadLocal<Long> CURRENT = new ThreadLocal<>();
+
+    private Deadline() {
+    }
+
+    /**
+     * 지금부터 timeoutMillis 안에 끝내야 하는 범위를 연다. 바깥 범위의 마감이 더 이르면 그것을 그대로 쓴다.
+     */
+    public static Scope start(long timeoutMillis) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        Long outer = CURRENT.get();
+        return at(outer != null && outer - deadline < 0 ? outer : deadline);
+    }
+
+    static Scope at(Long deadlineNanos) {
+        Long previous = CURRENT.get();
+        if (deadlineNanos == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(deadlineNanos);
+        }
+        return new Scope(previous);
+    }
+
+    /**
+     * 다른 스레드로 마감을 넘길 때 쓴다. 마감이 없으면 null
+     */
+    static Long currentNanos() {
+        return CURRENT.get();
+    }
+
+    public static boolean isActive() {
+        return CURRENT.get() != null;
+    }
+
+    /**
+     * 남은 시간(ms). 마감이 없으면 Long.MAX_VALUE
+     */
+    public static long remainingMillis() {
+        Long deadline = CURRENT.get();
+        if (deadline == null) {
+            return Long.MAX_VALUE;
+        }
+        return TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+    }
+
+    /**
+     * 마감이 지났으면 QueryTimeoutException 을 던진다.
+     */
+    public static void check() {
+        if (remainingMillis() <= 0) {
+            throw new QueryTimeoutException("요청 처리 시간이 이미 초과되었습니다");
+        }
+    }
+
+    /**
+     * 남은 시간을 쿼리 타임아웃으로 설정한다. 이미 더 짧은 타임아웃이 설정되어 있으면 그대로 둔다.
+     * JDBC 타임아웃은 초 단위이므로 올림하고, 1초 미만이 남았어도 최소 1초를 준다.
+     */
+    public static void applyTo(Statement stmt) throws SQLException {
+        if (!isActive()) {
+            return;
+        }
+        check();
+        int seconds = (int) Math.min(Integer.MAX_VALUE, (remainingMillis() + 999) / 1_000);
+        int current = stmt.getQueryTimeout();
+        if (current == 0 || seconds < current) {
+            stmt.setQueryTimeout(seconds);
+        }
+    }
+
+    public static final class Scope implements AutoCloseable {
+        private final Long previous;
+
+        private Scope(Long previous) {
+            this.previous = previous;
+        }
+
+        @Override
+        public void close() {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package toby.spring.user.dao;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * 현재 스레드의 Deadline 에 남은 시간을 모든 Statement 의 쿼리 타임아웃으로 넘기는 JdbcTemplate.
+ * 템플릿이나 트랜잭션에 설정된 타임아웃이 더 짧으면 그것을 따른다.
+ */
+public class DeadlineAwareJdbcTemplate extends JdbcTemplate {
+
+    public DeadlineAwareJdbcTemplate() {
+    }
+
+    public DeadlineAwareJdbcTemplate(DataSource dataSource) {
+        super(dataSource);
+    }
+
+    @Override
+    protected void applyStatementSettings(Statement stmt) throws SQLException {
+        super.applyStatementSettings(stmt);
+        Deadline.applyTo(stmt);
+    }
+}
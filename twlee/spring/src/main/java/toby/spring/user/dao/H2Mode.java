@@ -0,0 +1,31 @@
+package toby.spring.user.dao;
+
+import java.util.Locale;
+
+/**
+ * H2 접속 방식.
+ * TCP 는 별도로 띄운 H2 서버에 루프백 네트워크로 붙고, FILE/MEM 은 같은 JVM 안에서 바로 DB 엔진을 호출한다.
+ * FILE 모드는 DB 파일에 락을 잡으므로 같은 파일을 TCP 서버가 열고 있으면 접속할 수 없다.
+ */
+public enum H2Mode {
+    TCP("jdbc:h2:tcp://localhost/~/", ""),
+    FILE("jdbc:h2:~/", ""),
+    // 마지막 커넥션이 닫혀도 DB 가 사라지지 않도록 DB_CLOSE_DELAY 를 준다
+    MEM("jdbc:h2:mem:", ";DB_CLOSE_DELAY=-1");
+
+    private final String prefix;
+    private final String suffix;
+
+    H2Mode(String prefix, String suffix) {
+        this.prefix = prefix;
+        this.suffix = suffix;
+    }
+
+    public String url(String name) {
+        return prefix + name + suffix;
+    }
+
+    public static H2Mode of(String mode) {
+        return valueOf(mode.trim().toUpperCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,66 @@
+package toby.spring.user.dao;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Properties;
+
+/**
+ * database.properties 의 db.mode, db.name, db.username, db.password 로 만든 H2 접속 정보.
+ * 같은 키의 시스템 프로퍼티가 있으면 그 값을 우선한다. ex) -Ddb.mode=file
+ */
+public class H2Settings {
+    private static final String RESOURCE = "/database.properties";
+
+    private final H2Mode mode;
+    private final String name;
+    private final String username;
+    private final String password;
+
+    public H2Settings(H2Mode mode, String name, String username, String password) {
+        this.mode = mode;
+        this.name = name;
+        this.username = username;
+        this.password = password;
+    }
+
+    public static H2Settings load() {
+        Properties properties = new Properties();
+        try (InputStream in = H2Settings.class.getResourceAsStream(RESOURCE)) {
+            if (in != null) {
+                properties.load(in);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new H2Settings(
+                H2Mode.of(property(properties, "db.mode", "tcp")),
+                property(properties, "db.name", "test"),
+                property(properties, "db.username", "sa"),
+                property(properties, "db.password", ""));
+    }
+
+    private static String property(Properties properties, String key, String defaultValue) {
+        return System.getProperty(key, properties.getProperty(key, defaultValue));
+    }
+
+    public H2Settings withMode(H2Mode mode) {
+        return new H2Settings(mode, name, username, password);
+    }
+
+    public H2Mode getMode() {
+        return mode;
+    }
+
+    public String getUrl() {
+        return mode.url(name);
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getPassword() {
+        return password;
+    }
+}
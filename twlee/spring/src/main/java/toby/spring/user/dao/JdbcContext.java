@@ -1,12 +1,27 @@
 package toby.spring.user.dao;
 
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
 import javax.sql.DataSource;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
 
 public class JdbcContext {
+    public static final int DEFAULT_BATCH_SIZE = 1_000;
+    public static final int DEFAULT_FETCH_SIZE = 100;
+
     private DataSource dataSource;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private int fetchSize = DEFAULT_FETCH_SIZE;
+    private WriteCoalescer writeCoalescer;
 
     public JdbcContext() {
     }
@@ -15,16 +30,52 @@ public class JdbcContext {
         this.dataSource = dataSource;
     }
 
+    /**
+     * 배치 실행 시 몇 건마다 executeBatch 할지 정한다.
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize 는 1 이상이어야 합니다: " + batchSize);
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * 설정하면 트랜잭션 밖에서 실행되는 BatchStatementStrategy 쓰기를 다른 스레드의 쓰기와 묶어서 커밋한다.
+     * 묶인 쓰기는 다른 스레드에서 실행되어 마감을 지킬 수 없으므로 Deadline 이 걸린 쓰기는 묶지 않는다.
+     */
+    public void setWriteCoalescer(WriteCoalescer writeCoalescer) {
+        this.writeCoalescer = writeCoalescer;
+    }
+
+    /**
+     * 조회 시 드라이버가 한 번에 가져올 행 수
+     */
+    public void setFetchSize(int fetchSize) {
+        this.fetchSize = fetchSize;
+    }
+
     public void executeSql(final String query) throws SQLException {
         workWithStatementStrategy(conn -> conn.prepareStatement(query));
     }
 
+    /**
+     * 트랜잭션이 진행 중이면 트랜잭션 동기화 저장소에 바인딩된 커넥션을 함께 쓰고, 닫지 않고 돌려놓는다.
+     * 모든 작업은 Deadline 에 남은 시간을 쿼리 타임아웃으로 쓰고, 마감이 지났으면 커넥션을 얻기 전에 실패한다.
+     */
     public void workWithStatementStrategy(StatementStrategy stmt) throws SQLException {
+        Deadline.check();
+        if (writeCoalescer != null && stmt instanceof BatchStatementStrategy
+                && !TransactionSynchronizationManager.isActualTransactionActive() && !Deadline.isActive()) {
+            writeCoalescer.submit((BatchStatementStrategy) stmt);
+            return;
+        }
         Connection conn = null;
         PreparedStatement ps = null;
         try {
-            conn = dataSource.getConnection();
+            conn = DataSourceUtils.doGetConnection(dataSource);
             ps = stmt.makePreparedStatement(conn);
+            Deadline.applyTo(ps);
             ps.executeUpdate();
         } catch (SQLException e) {
             throw e;
@@ -35,12 +86,117 @@ public class JdbcContext {
                 } catch (SQLException e) {
                 }
             }
-            if (conn != null) {
+            DataSourceUtils.releaseConnection(conn, dataSource);
+        }
+    }
+
+    /**
+     * 전략들을 순서대로 addBatch 해서 batchSize 건마다 executeBatch 한다.
+     * SQL 이 바뀌면 그때까지 쌓인 배치를 먼저 실행하고 새 PreparedStatement 를 만든다.
+     *
+     * @return executeBatch 한 번마다의 건별 갱신 수
+     */
+    public int[][] workWithBatch(Iterable<? extends BatchStatementStrategy> strategies) throws SQLException {
+        return executeBatch(strategies, BatchStatementStrategy::getSql, (ps, stmt) -> stmt.setValues(ps));
+    }
+
+    /**
+     * 하나의 SQL 에 파라미터 묶음들을 바인딩해서 batchSize 건마다 executeBatch 한다.
+     * 스트림은 stream::iterator 로 넘기면 전부 메모리에 올리지 않고 흘려보낼 수 있다.
+     *
+     * @return executeBatch 한 번마다의 건별 갱신 수
+     */
+    public <T> int[][] workWithBatch(String sql, Iterable<T> parameters, ParameterizedPreparedStatementSetter<T> setter) throws SQLException {
+        return executeBatch(parameters, parameter -> sql, setter);
+    }
+
+    private <T> int[][] executeBatch(Iterable<? extends T> items, Function<T, String> sqlOf,
+                                     ParameterizedPreparedStatementSetter<T> setter) throws SQLException {
+        List<int[]> counts = new ArrayList<>();
+        Connection conn = null;
+        PreparedStatement ps = null;
+        try {
+            Deadline.check();
+            conn = DataSourceUtils.doGetConnection(dataSource);
+            String currentSql = null;
+            int pending = 0;
+            for (T item : items) {
+                String sql = sqlOf.apply(item);
+                if (!sql.equals(currentSql)) {
+                    if (pending > 0) {
+                        counts.add(ps.executeBatch());
+                        pending = 0;
+                    }
+                    closeStatement(ps);
+                    ps = conn.prepareStatement(sql);
+                    Deadline.applyTo(ps);
+                    currentSql = sql;
+                }
+                setter.setValues(ps, item);
+                ps.addBatch();
+                if (++pending == batchSize) {
+                    counts.add(ps.executeBatch());
+                    pending = 0;
+                }
+            }
+            if (pending > 0) {
+                counts.add(ps.executeBatch());
+            }
+            return counts.toArray(new int[0][]);
+        } finally {
+            closeStatement(ps);
+            DataSourceUtils.releaseConnection(conn, dataSource);
+        }
+    }
+
+    public int query(String sql, RowCallback callback) throws SQLException {
+        return query(sql, ps -> {
+        }, callback);
+    }
+
+    /**
+     * 결과를 한 행씩 콜백에 넘긴다. 앞으로만 읽는 읽기 전용 커서를 쓰고 fetchSize 만큼씩 가져온다.
+     *
+     * @return 콜백에 넘긴 행 수
+     */
+    public int query(String sql, PreparedStatementSetter setter, RowCallback callback) throws SQLException {
+        Connection conn = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            Deadline.check();
+            conn = DataSourceUtils.doGetConnection(dataSource);
+            ps = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(fetchSize);
+            Deadline.applyTo(ps);
+            setter.setValues(ps);
+            rs = ps.executeQuery();
+            int rows = 0;
+            while (rs.next()) {
+                rows++;
+                if (!callback.processRow(rs)) {
+                    break;
+                }
+            }
+            return rows;
+        } finally {
+            if (rs != null) {
                 try {
-                    conn.close();
+                    rs.close();
                 } catch (SQLException e) {
                 }
             }
+            closeStatement(ps);
+            DataSourceUtils.releaseConnection(conn, dataSource);
+        }
+    }
+
+    private static void closeStatement(PreparedStatement ps) {
+        if (ps != null) {
+            try {
+                ps.close();
+            } catch (SQLException e) {
+            }
         }
     }
 }
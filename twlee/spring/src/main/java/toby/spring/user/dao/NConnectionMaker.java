@@ -5,9 +5,18 @@ import java.sql.DriverManager;
 import java.sql.SQLException;
 
 public class NConnectionMaker implements ConnectionMaker {
+    private final H2Settings settings;
+
+    public NConnectionMaker() {
+        this(H2Settings.load());
+    }
+
+    public NConnectionMaker(H2Settings settings) {
+        this.settings = settings;
+    }
 
     public Connection makeConnection() throws SQLException, ClassNotFoundException {
         Class.forName("org.h2.Driver");
-        return DriverManager.getConnection("jdbc:h2:tcp://localhost/~/test", "sa", "");
+        return DriverManager.getConnection(settings.getUrl(), settings.getUsername(), settings.getPassword());
     }
 }
@@ -0,0 +1,593 @@
+package toby.spring.user.dao;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 실제 커넥션 생성은 타깃 ConnectionMaker 에 맡기고, 만들어진 커넥션을 재사용하는 ConnectionMaker 데코레이터.
+ * 돌려주는 커넥션은 프록시이므로 DAO 가 close() 를 호출하면 물리 커넥션을 닫지 않고 풀로 반납한다.
+ * statementCacheSize 를 주면 커넥션마다 prepareStatement(sql) 결과를 SQL 문자열 기준 LRU 로 캐시해서
+ * 같은 SQL 을 매번 다시 파싱하지 않는다. 커넥션에서 만든 Statement 도 모두 감싸서 getConnection() 이 프록시를 돌려주게 한다.
+ */
+@Slf4j
+public class PoolingConnectionMaker implements ConnectionMaker, AutoCloseable {
+    public static final int DEFAULT_MAX_SIZE = 10;
+
+    private final ConnectionMaker target;
+    private final int maxSize;
+
+    // 대기는 Semaphore, 유휴 커넥션 보관은 lock-free 덱으로 처리한다
+    private final Semaphore permits;
+    private final ConcurrentLinkedDeque<PooledConnection> idleConnections = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger totalConnections = new AtomicInteger();
+    private final AtomicLong lastEvictionAt = new AtomicLong(System.currentTimeMillis());
+    private volatile boolean closed;
+    private final LongAdder statementCacheHits = new LongAdder();
+    private final LongAdder statementCacheMisses = new LongAdder();
+
+    private long borrowTimeoutMillis = 3_000;
+    private long idleTimeoutMillis = 600_000;
+    private long maxLifetimeMillis = 1_800_000;
+    private long validationIntervalMillis = 500;
+    private int validationTimeoutSeconds = 1;
+    private int minIdle;
+    private int statementCacheSize;
+    private volatile long lastWarmUpMillis = -1;
+
+    public PoolingConnectionMaker(ConnectionMaker target) {
+        this(target, DEFAULT_MAX_SIZE);
+    }
+
+    public PoolingConnectionMaker(ConnectionMaker target, int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize 는 1 이상이어야 합니다: " + maxSize);
+        }
+        this.target = target;
+        this.maxSize = maxSize;
+        this.permits = new Semaphore(maxSize, true);
+    }
+
+    @Override
+    public Connection makeConnection() throws SQLException, ClassNotFoundException {
+        assertOpen();
+        // permit 대기와 유휴 커넥션 대기를 합쳐서 borrowTimeoutMillis 안에 끝낸다
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(borrowTimeoutMillis);
+        acquirePermit(deadline);
+        try {
+            PooledConnection pooled = takeOrCreate(deadline);
+            return pooled.borrow();
+        } catch (SQLException | ClassNotFoundException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private void acquirePermit(long deadline) throws SQLException {
+        try {
+            if (!permits.tryAcquire(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                throw new SQLTransientConnectionException(
+                        borrowTimeoutMillis + "ms 안에 커넥션을 얻지 못했습니다 (maxSize=" + maxSize + ")");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException("커넥션 대기 중 인터럽트", e);
+        }
+    }
+
+    private PooledConnection takeOrCreate(long deadline) throws SQLException, ClassNotFoundException {
+        while (true) {
+            PooledConnection pooled = pollValidConnection();
+            if (pooled != null) {
+                return pooled;
+            }
+            int total = totalConnections.get();
+            if (total < maxSize && totalConnections.compareAndSet(total, total + 1)) {
+                return createConnection();
+            }
+            // 다른 스레드의 반납과 경합한 경우: 유휴 커넥션이 들어올 때까지 잠깐 양보한다
+            if (System.nanoTime() - deadline > 0) {
+                throw new SQLTransientConnectionException("풀이 가득 차서 커넥션을 얻지 못했습니다 (maxSize=" + maxSize + ")");
+            }
+            Thread.yield();
+        }
+    }
+
+    private PooledConnection createConnection() throws SQLException, ClassNotFoundException {
+        try {
+            return new PooledConnection(target.makeConnection());
+        } catch (SQLException | ClassNotFoundException | RuntimeException e) {
+            totalConnections.decrementAndGet();
+            throw e;
+        }
+    }
+
+    private PooledConnection pollValidConnection() {
+        PooledConnection pooled;
+        // 가장 최근에 반납된 커넥션부터 꺼내서 오래 쉰 커넥션은 자연스럽게 만료되도록 한다
+        while ((pooled = idleConnections.pollFirst()) != null) {
+            long now = System.currentTimeMillis();
+            if (pooled.isExpired(now) || !pooled.isValid(now)) {
+                discard(pooled);
+                continue;
+            }
+            return pooled;
+        }
+        return null;
+    }
+
+    /**
+     * minIdle 개수만큼 커넥션을 병렬로 미리 열어 둔다. 애플리케이션이 요청을 받기 전에 호출해서
+     * 재시작 직후 첫 요청들이 커넥션 생성 비용을 떠안지 않게 한다.
+     *
+     * @return 새로 열어서 검증까지 통과한 커넥션 수
+     */
+    public int prewarm() {
+        long start = System.nanoTime();
+        int needed = minIdle - totalConnections.get();
+        if (closed || needed <= 0) {
+            lastWarmUpMillis = 0;
+            return 0;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(needed, 8), runnable -> {
+            Thread thread = new Thread(runnable, "connection-prewarm");
+            thread.setDaemon(true);
+            return thread;
+        });
+        int opened = 0;
+        try {
+            List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+            for (int i = 0; i < needed; i++) {
+                futures.add(CompletableFuture.supplyAsync(this::openIdleConnection, executor));
+            }
+            for (CompletableFuture<Boolean> future : futures) {
+                if (future.join()) {
+                    opened++;
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        lastWarmUpMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        log.info("커넥션 풀 예열 완료: {}/{}개, {}ms", opened, needed, lastWarmUpMillis);
+        return opened;
+    }
+
+    private boolean openIdleConnection() {
+        int total = totalConnections.get();
+        while (total < maxSize) {
+            if (totalConnections.compareAndSet(total, total + 1)) {
+                PooledConnection pooled;
+                try {
+                    pooled = createConnection();
+                } catch (Exception e) {
+                    log.warn("커넥션 예열 실패", e);
+                    return false;
+                }
+                if (!pooled.validate()) {
+                    discard(pooled);
+                    return false;
+                }
+                idleConnections.offerLast(pooled);
+                return true;
+            }
+            total = totalConnections.get();
+        }
+        return false;
+    }
+
+    private void release(PooledConnection pooled) {
+        long now = System.currentTimeMillis();
+        if (closed || pooled.isLifetimeExceeded(now) || !pooled.resetState()) {
+            discard(pooled);
+        } else {
+            pooled.lastUsedAt = now;
+            idleConnections.offerFirst(pooled);
+        }
+        // 유휴 목록에 먼저 넣고 permit 을 돌려줘야 대기 중인 스레드가 바로 꺼내 쓸 수 있다
+        permits.release();
+        evictIdleConnectionsIfNeeded(now);
+    }
+
+    private void evictIdleConnectionsIfNeeded(long now) {
+        long last = lastEvictionAt.get();
+        long interval = Math.max(1_000, Math.min(idleTimeoutMillis, maxLifetimeMillis) / 2);
+        if (now - last >= interval && lastEvictionAt.compareAndSet(last, now)) {
+            evictIdleConnections();
+        }
+    }
+
+    /**
+     * 유휴 시간이나 최대 수명을 넘긴 커넥션을 풀에서 제거한다. 반납 시점에 주기적으로 호출된다.
+     */
+    public int evictIdleConnections() {
+        long now = System.currentTimeMillis();
+        int evicted = 0;
+        for (PooledConnection pooled : idleConnections) {
+            // minIdle 이하로는 유휴 시간 때문에 줄이지 않는다. 최대 수명은 항상 적용한다
+            boolean expired = totalConnections.get() > minIdle ? pooled.isExpired(now) : pooled.isLifetimeExceeded(now);
+            // remove 에 성공한 스레드만 커넥션을 닫는다. 동시에 꺼내간 경우에는 false 가 반환된다
+            if (expired && idleConnections.remove(pooled)) {
+                discard(pooled);
+                evicted++;
+            }
+        }
+        return evicted;
+    }
+
+    private void discard(PooledConnection pooled) {
+        totalConnections.decrementAndGet();
+        pooled.closePhysically();
+    }
+
+    private void assertOpen() throws SQLException {
+        if (closed) {
+            throw new SQLException("이미 종료된 커넥션 풀입니다");
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        PooledConnection pooled;
+        while ((pooled = idleConnections.pollFirst()) != null) {
+            discard(pooled);
+        }
+    }
+
+    public int getTotalConnections() {
+        return totalConnections.get();
+    }
+
+    public int getIdleConnections() {
+        return idleConnections.size();
+    }
+
+    public int getActiveConnections() {
+        return maxSize - permits.availablePermits();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getStatementCacheHits() {
+        return statementCacheHits.sum();
+    }
+
+    public long getStatementCacheMisses() {
+        return statementCacheMisses.sum();
+    }
+
+    /**
+     * 마지막 예열에 걸린 시간(ms). 예열한 적이 없으면 -1
+     */
+    public long getLastWarmUpMillis() {
+        return lastWarmUpMillis;
+    }
+
+    public void setMinIdle(int minIdle) {
+        this.minIdle = Math.min(minIdle, maxSize);
+    }
+
+    public void setBorrowTimeoutMillis(long borrowTimeoutMillis) {
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+    }
+
+    public void setIdleTimeoutMillis(long idleTimeoutMillis) {
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    public void setMaxLifetimeMillis(long maxLifetimeMillis) {
+        this.maxLifetimeMillis = maxLifetimeMillis;
+    }
+
+    public void setValidationIntervalMillis(long validationIntervalMillis) {
+        this.validationIntervalMillis = validationIntervalMillis;
+    }
+
+    public void setValidationTimeoutSeconds(int validationTimeoutSeconds) {
+        this.validationTimeoutSeconds = validationTimeoutSeconds;
+    }
+
+    /**
+     * 커넥션당 캐시할 PreparedStatement 수. 0 이면 캐시하지 않는다.
+     */
+    public void setStatementCacheSize(int statementCacheSize) {
+        this.statementCacheSize = statementCacheSize;
+    }
+
+    // prepareStatement(sql) 와 기본값과 같은 커서 옵션을 준 prepareStatement(sql, FORWARD_ONLY, READ_ONLY) 만 캐시한다
+    private static boolean isCacheablePrepare(Method method, Object[] args) {
+        if (!method.getName().equals("prepareStatement")) {
+            return false;
+        }
+        if (args.length == 1) {
+            return true;
+        }
+        return args.length == 3
+                && args[1].equals(ResultSet.TYPE_FORWARD_ONLY)
+                && args[2].equals(ResultSet.CONCUR_READ_ONLY);
+    }
+
+    private static void closeQuietly(Statement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+        }
+    }
+
+    private static boolean isClosedQuietly(Statement statement) {
+        try {
+            return statement.isClosed();
+        } catch (SQLException e) {
+            return true;
+        }
+    }
+
+    private final class PooledConnection {
+        private final Connection physical;
+        private final long createdAt;
+        private volatile long lastUsedAt;
+        // 커넥션을 빌려간 스레드만 접근하므로 동기화하지 않는다. 꺼내 쓰는 동안은 캐시에서 빠져 있다
+        private final Map<String, PreparedStatement> statementCache = new LinkedHashMap<String, PreparedStatement>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() <= statementCacheSize) {
+                    return false;
+                }
+                closeQuietly(eldest.getValue());
+                return true;
+            }
+        };
+
+        private PooledConnection(Connection physical) {
+            this.physical = physical;
+            this.createdAt = System.currentTimeMillis();
+            this.lastUsedAt = createdAt;
+        }
+
+        private Connection borrow() {
+            ConnectionHandler handler = new ConnectionHandler(this);
+            handler.proxy = (Connection) Proxy.newProxyInstance(
+                    Connection.class.getClassLoader(),
+                    new Class[]{Connection.class},
+                    handler);
+            return handler.proxy;
+        }
+
+        private boolean isLifetimeExceeded(long now) {
+            return now - createdAt >= maxLifetimeMillis;
+        }
+
+        private boolean isExpired(long now) {
+            return isLifetimeExceeded(now) || now - lastUsedAt >= idleTimeoutMillis;
+        }
+
+        // 방금 쓰던 커넥션까지 매번 검증하면 왕복 비용이 들기 때문에 일정 시간 쉰 커넥션만 검증한다
+        private boolean isValid(long now) {
+            if (now - lastUsedAt < validationIntervalMillis) {
+                return true;
+            }
+            return validate();
+        }
+
+        private boolean validate() {
+            try {
+                return physical.isValid(validationTimeoutSeconds);
+            } catch (SQLException e) {
+                return false;
+            }
+        }
+
+        private boolean resetState() {
+            try {
+                if (physical.isClosed()) {
+                    return false;
+                }
+                if (!physical.getAutoCommit()) {
+                    physical.rollback();
+                    physical.setAutoCommit(true);
+                }
+                return true;
+            } catch (SQLException e) {
+                return false;
+            }
+        }
+
+        private PreparedStatement prepareCached(String sql, ConnectionHandler owner) throws SQLException {
+            PreparedStatement statement = statementCache.remove(sql);
+            if (statement != null && !statement.isClosed()) {
+                statementCacheHits.increment();
+            } else {
+                statementCacheMisses.increment();
+                statement = physical.prepareStatement(sql);
+            }
+            return (PreparedStatement) owner.wrap(PreparedStatement.class, sql, statement);
+        }
+
+        // 다음 사용자가 이전 설정을 물려받지 않도록 파라미터와 제한값을 지우고 캐시에 넣는다
+        private void returnStatement(String sql, PreparedStatement statement) {
+            try {
+                statement.clearParameters();
+                statement.clearBatch();
+                statement.clearWarnings();
+                statement.setQueryTimeout(0);
+                statement.setMaxRows(0);
+            } catch (SQLException e) {
+                closeQuietly(statement);
+                return;
+            }
+            PreparedStatement previous = statementCache.put(sql, statement);
+            if (previous != null) {
+                closeQuietly(previous);
+            }
+        }
+
+        private void closePhysically() {
+            statementCache.values().forEach(PoolingConnectionMaker::closeQuietly);
+            statementCache.clear();
+            try {
+                physical.close();
+            } catch (SQLException e) {
+            }
+        }
+    }
+
+    private final class ConnectionHandler implements InvocationHandler {
+        private final PooledConnection pooled;
+        // 누수 회수처럼 빌려간 스레드가 아닌 곳에서 close 할 수 있으므로 volatile 로 둔다
+        private volatile boolean returned;
+        private volatile Connection proxy;
+        // 이 대여 중에 만든 Statement. 반납할 때 닫히지 않은 것을 닫는다
+        private final Set<Statement> openStatements = ConcurrentHashMap.newKeySet();
+
+        private ConnectionHandler(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    synchronized (this) {
+                        if (returned) {
+                            return null;
+                        }
+                        returned = true;
+                    }
+                    closeOpenStatements();
+                    release(pooled);
+                    return null;
+                case "isClosed":
+                    return returned || pooled.physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled[" + pooled.physical + "]";
+                default:
+                    if (returned) {
+                        throw new SQLException("이미 풀에 반납된 커넥션입니다");
+                    }
+                    if (statementCacheSize > 0 && isCacheablePrepare(method, args)) {
+                        return pooled.prepareCached((String) args[0], this);
+                    }
+                    Object result;
+                    try {
+                        result = method.invoke(pooled.physical, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getTargetException();
+                    }
+                    // createStatement, prepareStatement, prepareCall 이 돌려준 타입 그대로 감싼다
+                    if (result instanceof Statement) {
+                        return wrap(method.getReturnType(), null, (Statement) result);
+                    }
+                    return result;
+            }
+        }
+
+        // sql 이 있으면 캐시에서 꺼낸 PreparedStatement 다
+        private Statement wrap(Class<?> type, String sql, Statement statement) {
+            Statement wrapped = (Statement) Proxy.newProxyInstance(
+                    type.getClassLoader(),
+                    new Class[]{type},
+                    new StatementHandler(this, sql, statement));
+            track(wrapped);
+            return wrapped;
+        }
+
+        private void track(Statement statement) {
+            // 이미 닫힌 Statement 가 쌓이지 않도록 가끔 정리한다
+            if (openStatements.size() >= 64) {
+                openStatements.removeIf(PoolingConnectionMaker::isClosedQuietly);
+            }
+            openStatements.add(statement);
+        }
+
+        // returned 를 먼저 세웠으므로 캐시된 Statement 도 캐시로 돌아가지 않고 실제로 닫힌다
+        private void closeOpenStatements() {
+            for (Statement statement : openStatements) {
+                closeQuietly(statement);
+            }
+            openStatements.clear();
+        }
+    }
+
+    /**
+     * 커넥션에서 만든 Statement 를 감싸서 getConnection() 이 풀의 커넥션 프록시를 돌려주게 한다.
+     * 캐시된 PreparedStatement(sql 이 있는 경우)는 close() 하면 닫지 않고 커넥션의 캐시로 돌려보내고,
+     * 커넥션이 이미 반납된 뒤에 닫으면 그때는 실제로 닫는다.
+     */
+    private static final class StatementHandler implements InvocationHandler {
+        private final ConnectionHandler owner;
+        private final String sql;
+        private final Statement target;
+        private boolean closed;
+
+        private StatementHandler(ConnectionHandler owner, String sql, Statement target) {
+            this.owner = owner;
+            this.sql = sql;
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        if (sql == null || owner.returned) {
+                            target.close();
+                        } else {
+                            owner.pooled.returnStatement(sql, (PreparedStatement) target);
+                        }
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || target.isClosed();
+                case "getConnection":
+                    return owner.proxy;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    if (closed) {
+                        throw new SQLException("이미 닫힌 Statement 입니다");
+                    }
+                    try {
+                        return method.invoke(target, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getTargetException();
+                    }
+            }
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package toby.spring.user.dao;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * JdbcContext.query 가 한 행씩 넘겨주는 콜백. 행을 모아두지 않으므로 큰 결과도 일정한 메모리로 읽을 수 있다.
+ */
+@FunctionalInterface
+public interface RowCallback {
+    /**
+     * @return false 를 돌려주면 남은 행을 읽지 않고 조회를 끝낸다
+     */
+    boolean processRow(ResultSet rs) throws SQLException;
+}
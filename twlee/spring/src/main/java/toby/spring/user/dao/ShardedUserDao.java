@@ -0,0 +1,328 @@
+package toby.spring.user.dao;
+
+import toby.spring.user.domain.Level;
+import toby.spring.user.domain.User;
+import toby.spring.user.exception.DuplicateUserIdException;
+import toby.spring.user.sqlservice.SqlService;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * User.id 의 해시로 N 개의 DataSource 에 사용자를 나눠 저장하는 UserDao.
+ * 단건 작업은 한 샤드로만 가고, 전체 조회/건수/삭제는 모든 샤드에 동시에 보낸 뒤 결과를 합친다.
+ * 샤드를 넘나드는 트랜잭션은 지원하지 않는다.
+ */
+public class ShardedUserDao implements UserDao, AutoCloseable {
+    private final List<UserDao> shards;
+    private final ExecutorService executor;
+    private final boolean ownsExecutor;
+
+    public ShardedUserDao(List<DataSource> dataSources, SqlService sqlService) {
+        this(dataSources, sqlService, newShardExecutor(dataSources.size()), true);
+    }
+
+    public ShardedUserDao(List<DataSource> dataSources, SqlService sqlService, ExecutorService executor) {
+        this(dataSources, sqlService, executor, false);
+    }
+
+    private ShardedUserDao(List<DataSource> dataSources, SqlService sqlService, ExecutorService executor, boolean ownsExecutor) {
+        if (dataSources.isEmpty()) {
+            throw new IllegalArgumentException("샤드가 최소 한 개는 있어야 합니다");
+        }
+        this.shards = new ArrayList<>();
+        for (DataSource dataSource : dataSources) {
+            shards.add(new UserSqlServiceDao(dataSource, sqlService));
+        }
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+    }
+
+    private static ExecutorService newShardExecutor(int shardCount) {
+        AtomicInteger sequence = new AtomicInteger();
+        return Executors.newFixedThreadPool(shardCount, runnable -> {
+            Thread thread = new Thread(runnable, "user-shard-" + sequence.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    UserDao shardFor(String id) {
+        return shards.get(Math.floorMod(id.hashCode(), shards.size()));
+    }
+
+    public void add(User user) {
+        shardFor(user.getId()).add(user);
+    }
+
+    /**
+     * 샤드별로 나눠서 동시에 일괄 등록한다. 중복 아이디는 모든 샤드의 것을 모아서 한 번에 알린다.
+     */
+    public void addAll(Collection<User> users) {
+        Map<UserDao, List<User>> usersByShard = groupByShard(users);
+        List<DuplicateUserIdException> failures = scatter(shard -> {
+            List<User> shardUsers = usersByShard.get(shard);
+            if (shardUsers == null) {
+                return null;
+            }
+            try {
+                shard.addAll(shardUsers);
+                return null;
+            } catch (DuplicateUserIdException e) {
+                return e;
+            }
+        });
+
+        DuplicateUserIdException firstFailure = null;
+        List<String> duplicateIds = new ArrayList<>();
+        for (DuplicateUserIdException failure : failures) {
+            if (failure != null) {
+                firstFailure = firstFailure == null ? failure : firstFailure;
+                duplicateIds.addAll(failure.getDuplicateIds());
+            }
+        }
+        if (firstFailure != null) {
+            throw new DuplicateUserIdException(firstFailure.getCause(), duplicateIds);
+        }
+    }
+
+    public void add_exception(User user) {
+        shardFor(user.getId()).add_exception(user);
+    }
+
+    public User get(String id) {
+        return shardFor(id).get(id);
+    }
+
+    public void update(User user) {
+        shardFor(user.getId()).update(user);
+    }
+
+    /**
+     * 샤드별로 실행 스레드에서 auto-commit 으로 수정한다. 호출한 쪽의 트랜잭션에 묶이지 않으므로 롤백되지 않는다.
+     */
+    public void updateAll(List<User> users) {
+        Map<UserDao, List<User>> usersByShard = groupByShard(users);
+        scatter(shard -> {
+            List<User> shardUsers = usersByShard.get(shard);
+            if (shardUsers != null) {
+                shard.updateAll(shardUsers);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * updateAll 과 마찬가지로 호출한 쪽의 트랜잭션에 묶이지 않는다.
+     */
+    public void updateLevels(List<User> users) {
+        Map<UserDao, List<User>> usersByShard = groupByShard(users);
+        scatter(shard -> {
+            List<User> shardUsers = usersByShard.get(shard);
+            if (shardUsers != null) {
+                shard.updateLevels(shardUsers);
+            }
+            return null;
+        });
+    }
+
+    private Map<UserDao, List<User>> groupByShard(Collection<User> users) {
+        Map<UserDao, List<User>> usersByShard = new HashMap<>();
+        for (User user : users) {
+            usersByShard.computeIfAbsent(shardFor(user.getId()), shard -> new ArrayList<>()).add(user);
+        }
+        return usersByShard;
+    }
+
+    public List<User> getAll() {
+        return mergeById(scatter(UserDao::getAll));
+    }
+
+    /**
+     * 샤드마다 limit 명씩 받아서 id 순으로 합친 뒤 앞에서부터 limit 명만 돌려준다.
+     */
+    public List<User> getPage(String afterId, int limit) {
+        UserBatchSupport.checkPageLimit(limit);
+        List<User> merged = mergeById(scatter(shard -> shard.getPage(afterId, limit)));
+        return merged.size() > limit ? new ArrayList<>(merged.subList(0, limit)) : merged;
+    }
+
+    /**
+     * 샤드를 차례로 훑는다. 메모리를 아끼기 위해 merge 하지 않으므로 전체 id 순서는 보장하지 않는다.
+     */
+    public void forEach(Consumer<User> action) {
+        for (UserDao shard : shards) {
+            shard.forEach(action);
+        }
+    }
+
+    public void findUpgradeCandidates(int minLoginForSilver, int minRecommendForGold, Consumer<User> action) {
+        for (UserDao shard : shards) {
+            shard.findUpgradeCandidates(minLoginForSilver, minRecommendForGold, action);
+        }
+    }
+
+    /**
+     * 샤드마다 다른 커넥션이라 호출한 쪽의 트랜잭션으로 잠금을 묶을 수 없다.
+     * 그래서 UserServiceImpl, UserTransactionService 는 이 DAO 를 주입받는 시점에 거부한다.
+     */
+    @Override
+    public boolean spansMultipleDatabases() {
+        return true;
+    }
+
+    public void lockUpgradeCandidates(int minLoginForSilver, int minRecommendForGold, Consumer<User> action) {
+        throw new UnsupportedOperationException("샤드 구성에서는 등급 변경 대상을 잠글 수 없습니다");
+    }
+
+    /**
+     * 샤드별로 실행 스레드에서 auto-commit 으로 실행된다. 샤드마다 따로 커밋되므로 호출한 쪽의 트랜잭션으로 롤백할 수 없다.
+     */
+    public int upgradeLevels(Collection<User> candidates) {
+        Map<UserDao, List<User>> usersByShard = groupByShard(candidates);
+        int count = 0;
+        for (Integer shardCount : scatter(shard -> {
+            List<User> shardUsers = usersByShard.get(shard);
+            return shardUsers == null ? 0 : shard.upgradeLevels(shardUsers);
+        })) {
+            count += shardCount;
+        }
+        return count;
+    }
+
+    public Map<String, Level> getLevelsForUpdate(Collection<String> ids) {
+        Map<UserDao, List<String>> idsByShard = new HashMap<>();
+        for (String id : ids) {
+            idsByShard.computeIfAbsent(shardFor(id), shard -> new ArrayList<>()).add(id);
+        }
+        Map<String, Level> levels = new HashMap<>();
+        for (Map<String, Level> shardLevels : scatter(shard -> {
+            List<String> shardIds = idsByShard.get(shard);
+            return shardIds == null ? Collections.<String, Level>emptyMap() : shard.getLevelsForUpdate(shardIds);
+        })) {
+            levels.putAll(shardLevels);
+        }
+        return levels;
+    }
+
+    public int getCount() {
+        int count = 0;
+        for (Integer shardCount : scatter(UserDao::getCount)) {
+            count += shardCount;
+        }
+        return count;
+    }
+
+    public Map<Level, Integer> getCountByLevel() {
+        Map<Level, Integer> counts = new EnumMap<>(Level.class);
+        for (Map<Level, Integer> shardCounts : scatter(UserDao::getCountByLevel)) {
+            shardCounts.forEach((level, count) -> counts.merge(level, count, Integer::sum));
+        }
+        return counts;
+    }
+
+    public void deleteAll() {
+        scatter(shard -> {
+            shard.deleteAll();
+            return null;
+        });
+    }
+
+    /**
+     * 샤드마다 실행 스레드에서 operation 을 실행한다. 호출한 스레드의 Deadline 을 실행 스레드에도 걸었다가 끝나면 되돌린다.
+     */
+    private <T> List<T> scatter(Function<UserDao, T> operation) {
+        Long deadline = Deadline.currentNanos();
+        List<CompletableFuture<T>> futures = new ArrayList<>();
+        for (UserDao shard : shards) {
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                try (Deadline.Scope ignored = Deadline.at(deadline)) {
+                    return operation.apply(shard);
+                }
+            }, executor));
+        }
+        List<T> results = new ArrayList<>();
+        try {
+            for (CompletableFuture<T> future : futures) {
+                results.add(future.join());
+            }
+        } catch (CompletionException e) {
+            // 샤드에서 던진 예외를 그대로 전달한다
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+        return results;
+    }
+
+    /**
+     * 샤드별로 id 순 정렬된 목록을 k-way merge 해서 전체 id 순서를 만든다.
+     */
+    static List<User> mergeById(List<List<User>> sortedLists) {
+        PriorityQueue<Cursor> heads = new PriorityQueue<>(Comparator.comparing(Cursor::currentId));
+        int total = 0;
+        for (List<User> list : sortedLists) {
+            total += list.size();
+            if (!list.isEmpty()) {
+                heads.add(new Cursor(list));
+            }
+        }
+        List<User> merged = new ArrayList<>(total);
+        while (!heads.isEmpty()) {
+            Cursor cursor = heads.poll();
+            merged.add(cursor.current());
+            if (cursor.advance()) {
+                heads.add(cursor);
+            }
+        }
+        return merged;
+    }
+
+    @Override
+    public void close() {
+        if (ownsExecutor) {
+            executor.shutdown();
+        }
+    }
+
+    private static final class Cursor {
+        private final List<User> users;
+        private int index;
+
+        private Cursor(List<User> users) {
+            this.users = users;
+        }
+
+        private User current() {
+            return users.get(index);
+        }
+
+        private String currentId() {
+            return current().getId();
+        }
+
+        private boolean advance() {
+            return ++index < users.size();
+        }
+    }
+}
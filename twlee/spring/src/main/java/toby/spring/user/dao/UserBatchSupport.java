@@ -0,0 +1,200 @@
+package toby.spring.user.dao;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.UncategorizedSQLException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import toby.spring.user.domain.Level;
+import toby.spring.user.domain.User;
+import toby.spring.user.exception.DuplicateUserIdException;
+
+import java.sql.BatchUpdateException;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * UserJdbcTemplateDao 와 UserSqlServiceDao 가 같이 쓰는 일괄 처리 로직
+ */
+final class UserBatchSupport {
+    static final int DEFAULT_BATCH_SIZE = 1000;
+    private static final String IN_PLACEHOLDER = "in (?)";
+
+    private UserBatchSupport() {
+    }
+
+    /**
+     * batchSize 건씩 batchUpdate 로 등록한다.
+     * 중복 아이디가 있어도 나머지 사용자는 끝까지 등록하고, 마지막에 중복된 아이디를 모아 DuplicateUserIdException 으로 알린다.
+     * 중복이 아닌 이유로 실패한 행이 있으면 그 예외를 바로 던진다.
+     */
+    static void insertAll(JdbcTemplate jdbcTemplate, String sql, Collection<User> users, int batchSize) {
+        checkBatchSize(batchSize);
+        List<User> list = new ArrayList<>(users);
+        List<String> duplicateIds = new ArrayList<>();
+        DuplicateKeyException firstFailure = null;
+        int from = 0;
+        while (from < list.size()) {
+            List<User> chunk = list.subList(from, Math.min(from + batchSize, list.size()));
+            try {
+                jdbcTemplate.batchUpdate(sql, chunk, chunk.size(), UserBinder.INSERT);
+                from += chunk.size();
+            } catch (DuplicateKeyException e) {
+                if (firstFailure == null) {
+                    firstFailure = e;
+                }
+                BatchUpdateException batchFailure = batchFailure(e);
+                if (batchFailure == null) {
+                    throw new DuplicateUserIdException(e); // 어느 행이 실패했는지 알 수 없다
+                }
+                int[] counts = batchFailure.getUpdateCounts();
+                List<String> failedIds = new ArrayList<>();
+                for (int i = 0; i < counts.length; i++) {
+                    if (counts[i] == Statement.EXECUTE_FAILED) {
+                        failedIds.add(chunk.get(i).getId());
+                    }
+                }
+                if (counts.length < chunk.size()) {
+                    // 첫 실패에서 멈추는 드라이버라면 실패한 행 다음부터 다시 보낸다
+                    failedIds.add(chunk.get(counts.length).getId());
+                    from += counts.length + 1;
+                } else {
+                    from += chunk.size();
+                }
+                checkOnlyDuplicates(jdbcTemplate, sql, e, batchFailure, failedIds.size());
+                duplicateIds.addAll(failedIds);
+            }
+        }
+        if (firstFailure != null) {
+            throw new DuplicateUserIdException(firstFailure, duplicateIds);
+        }
+    }
+
+    /**
+     * batchSize 건씩 batchUpdate 로 수정하고, 단건 update 처럼 사용자마다 정확히 한 행이 바뀌었는지 확인한다.
+     */
+    static void updateAll(JdbcTemplate jdbcTemplate, String sql, List<User> users, int batchSize,
+                          ParameterizedPreparedStatementSetter<User> setter) {
+        checkBatchSize(batchSize);
+        for (int from = 0; from < users.size(); from += batchSize) {
+            List<User> chunk = users.subList(from, Math.min(from + batchSize, users.size()));
+            int[] counts = jdbcTemplate.batchUpdate(sql, chunk, chunk.size(), setter)[0];
+            for (int i = 0; i < chunk.size(); i++) {
+                // 건수를 알려주지 않는 드라이버(SUCCESS_NO_INFO)는 성공으로 본다
+                if (i >= counts.length || (counts[i] != 1 && counts[i] != Statement.SUCCESS_NO_INFO)) {
+                    throw new RuntimeException("수정 실패: " + chunk.get(i).getId());
+                }
+            }
+        }
+    }
+
+    /**
+     * 후보를 지금 등급별로 묶고, batchSize 개씩 id 를 IN 목록으로 넘겨서 다음 등급으로 올린다.
+     * sql 은 등급 두 개(다음 등급, 지금 등급)와 "in (?)" 하나를 받는다.
+     */
+    static int upgradeLevels(JdbcTemplate jdbcTemplate, String sql, Collection<User> candidates, int batchSize) {
+        checkBatchSize(batchSize);
+        Map<Level, List<String>> idsByLevel = new EnumMap<>(Level.class);
+        for (User candidate : candidates) {
+            if (candidate.getLevel().getNext() != null) {
+                idsByLevel.computeIfAbsent(candidate.getLevel(), level -> new ArrayList<>()).add(candidate.getId());
+            }
+        }
+        int updated = 0;
+        for (Map.Entry<Level, List<String>> entry : idsByLevel.entrySet()) {
+            Level level = entry.getKey();
+            List<String> ids = entry.getValue();
+            for (int from = 0; from < ids.size(); from += batchSize) {
+                List<String> chunk = ids.subList(from, Math.min(from + batchSize, ids.size()));
+                List<Object> args = new ArrayList<>(chunk.size() + 2);
+                args.add(level.getNext().intValue());
+                args.add(level.intValue());
+                args.addAll(chunk);
+                updated += jdbcTemplate.update(expandIn(sql, chunk.size()), args.toArray());
+            }
+        }
+        return updated;
+    }
+
+    /**
+     * ids 를 batchSize 개씩 IN 목록으로 넘겨서 id 별 등급을 읽는다. sql 은 id, level 을 돌려주고 "in (?)" 하나를 받는다.
+     */
+    static Map<String, Level> getLevels(JdbcTemplate jdbcTemplate, String sql, Collection<String> ids, int batchSize) {
+        checkBatchSize(batchSize);
+        List<String> idList = new ArrayList<>(new LinkedHashSet<>(ids));
+        Map<String, Level> levels = new HashMap<>();
+        for (int from = 0; from < idList.size(); from += batchSize) {
+            List<String> chunk = idList.subList(from, Math.min(from + batchSize, idList.size()));
+            jdbcTemplate.query(expandIn(sql, chunk.size()),
+                    rs -> {
+                        levels.put(rs.getString("id"), Level.valueOf(rs.getInt("level")));
+                    },
+                    chunk.toArray());
+        }
+        return levels;
+    }
+
+    // "in (?)" 를 size 개의 자리표시자로 늘린다
+    static String expandIn(String sql, int size) {
+        int at = sql.indexOf(IN_PLACEHOLDER);
+        if (at < 0) {
+            throw new IllegalArgumentException("in (?) 가 없는 SQL 입니다: " + sql);
+        }
+        return sql.substring(0, at) + "in (" + String.join(", ", Collections.nCopies(size, "?")) + ")"
+                + sql.substring(at + IN_PLACEHOLDER.length());
+    }
+
+    // limit 에 음수를 넘기면 H2 는 전체 행을 돌려주므로 미리 막는다
+    static void checkPageLimit(int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit 은 1 이상이어야 합니다: " + limit);
+        }
+    }
+
+    static void checkBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize 는 1 이상이어야 합니다: " + batchSize);
+        }
+    }
+
+    private static BatchUpdateException batchFailure(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof BatchUpdateException) {
+                return (BatchUpdateException) cause;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 실패한 행마다의 원인(getNextException 으로 이어진 예외)을 번역해서, 중복 아이디가 아닌 실패가 있으면 그 예외를 던진다.
+     * 행마다 원인을 알려주지 않는 드라이버라면 중복인지 확인할 수 없으므로 원래 예외를 그대로 던진다.
+     */
+    private static void checkOnlyDuplicates(JdbcTemplate jdbcTemplate, String sql, DuplicateKeyException e,
+                                            BatchUpdateException batchFailure, int failedRows) {
+        List<SQLException> causes = new ArrayList<>();
+        for (SQLException next = batchFailure.getNextException(); next != null; next = next.getNextException()) {
+            causes.add(next);
+        }
+        if (causes.isEmpty()) {
+            causes.add(batchFailure);
+        }
+        for (SQLException cause : causes) {
+            DataAccessException translated = jdbcTemplate.getExceptionTranslator().translate("insertAll", sql, cause);
+            if (!(translated instanceof DuplicateKeyException)) {
+                throw translated != null ? translated : new UncategorizedSQLException("insertAll", sql, cause);
+            }
+        }
+        if (causes.size() < failedRows) {
+            throw e;
+        }
+    }
+}
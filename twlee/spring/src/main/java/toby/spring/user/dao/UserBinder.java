@@ -0,0 +1,56 @@
+package toby.spring.user.dao;
+
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import toby.spring.user.domain.User;
+
+/**
+ * userAdd / userUpdate / userUpdateLevel 의 파라미터를 User 에서 바로 PreparedStatement 에 넣는다.
+ * jdbcTemplate.update(sql, Object...) 처럼 매 호출 Object[] 를 만들고 값을 박싱해서 타입을 다시 추측하지 않는다.
+ */
+public final class UserBinder {
+    /**
+     * insert into users (id, name, password, level, login, recommend, email) values (?, ?, ?, ?, ?, ?, ?)
+     */
+    public static final ParameterizedPreparedStatementSetter<User> INSERT = (ps, user) -> {
+        ps.setString(1, user.getId());
+        ps.setString(2, user.getName());
+        ps.setString(3, user.getPassword());
+        ps.setInt(4, user.getLevel().intValue());
+        ps.setInt(5, user.getLogin());
+        ps.setInt(6, user.getRecommend());
+        ps.setString(7, user.getEmail());
+    };
+
+    /**
+     * update users set name = ?, password = ?, level = ?, login = ?, recommend = ?, email = ? where id = ?
+     */
+    public static final ParameterizedPreparedStatementSetter<User> UPDATE = (ps, user) -> {
+        ps.setString(1, user.getName());
+        ps.setString(2, user.getPassword());
+        ps.setInt(3, user.getLevel().intValue());
+        ps.setInt(4, user.getLogin());
+        ps.setInt(5, user.getRecommend());
+        ps.setString(6, user.getEmail());
+        ps.setString(7, user.getId());
+    };
+
+    /**
+     * update users set level = ? where id = ?
+     */
+    public static final ParameterizedPreparedStatementSetter<User> UPDATE_LEVEL = (ps, user) -> {
+        ps.setInt(1, user.getLevel().intValue());
+        ps.setString(2, user.getId());
+    };
+
+    private UserBinder() {
+    }
+
+    public static PreparedStatementSetter insert(User user) {
+        return ps -> INSERT.setValues(ps, user);
+    }
+
+    public static PreparedStatementSetter update(User user) {
+        return ps -> UPDATE.setValues(ps, user);
+    }
+}
@@ -1,21 +1,84 @@
 package toby.spring.user.dao;
 
+import toby.spring.user.domain.Level;
 import toby.spring.user.domain.User;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 public interface UserDao {
     void add(User user);
 
     void add_exception(User user);
 
+    void addAll(Collection<User> users);
+
     User get(String id);
 
     List<User> getAll();
 
+    /**
+     * getAll 과 같은 순서로 한 명씩 action 에 넘긴다. 전체 목록을 메모리에 올리지 않는다.
+     */
+    void forEach(Consumer<User> action);
+
+    /**
+     * id 순으로 afterId 다음 사용자부터 limit 명을 가져온다. afterId 가 null 이면 첫 페이지.
+     * 다음 페이지는 이번 페이지 마지막 사용자의 id 를 afterId 로 넘겨서 가져온다.
+     * limit 이 1 보다 작으면 IllegalArgumentException 을 던진다.
+     */
+    List<User> getPage(String afterId, int limit);
+
     void deleteAll();
 
     int getCount();
 
+    /**
+     * 등급별 사용자 수. 사용자가 없는 등급은 0 으로 채운다.
+     */
+    Map<Level, Integer> getCountByLevel();
+
+    /**
+     * 등급을 올릴 수 있는 사용자만 id 순으로 action 에 넘긴다.
+     * BASIC 은 login 이 minLoginForSilver 이상, SILVER 는 recommend 가 minRecommendForGold 이상인 사용자.
+     * 등급 올리기에 필요한 id, level, login, recommend, email 만 채워진다.
+     */
+    void findUpgradeCandidates(int minLoginForSilver, int minRecommendForGold, Consumer<User> action);
+
+    /**
+     * findUpgradeCandidates 와 같지만 select ... for update 로 읽은 행에 잠금을 건다.
+     * 잠금은 트랜잭션이 끝날 때까지 유지되므로 반드시 트랜잭션 안에서 호출해야 한다.
+     */
+    void lockUpgradeCandidates(int minLoginForSilver, int minRecommendForGold, Consumer<User> action);
+
+    /**
+     * 여러 DB 에 나눠 쓰는지. true 면 lockUpgradeCandidates 의 잠금과 수정을 호출한 쪽의 트랜잭션 하나로 묶을 수 없다.
+     */
+    default boolean spansMultipleDatabases() {
+        return false;
+    }
+
+    /**
+     * lockUpgradeCandidates 로 읽은 사용자들을 다음 등급(Level.getNext())으로 올리고 바뀐 행 수를 돌려준다.
+     * 등급별로 update ... where level = ? and id in (...) 한 문장씩 실행하므로 읽은 뒤 등급이 바뀐 사용자는 건너뛴다.
+     * 넘긴 사용자 객체의 level 은 바꾸지 않는다.
+     */
+    int upgradeLevels(Collection<User> candidates);
+
+    /**
+     * ids 중 있는 사용자의 지금 등급을 select ... for update 로 읽는다. 없는 id 는 결과에 없다.
+     * 트랜잭션 안이면 읽은 행은 트랜잭션이 끝날 때까지 잠기고, 밖이면 잠금은 바로 풀린다.
+     */
+    Map<String, Level> getLevelsForUpdate(Collection<String> ids);
+
     void update(User user);
+
+    void updateAll(List<User> users);
+
+    /**
+     * level 컬럼만 일괄 수정한다. findUpgradeCandidates 처럼 일부 컬럼만 읽은 사용자도 넘길 수 있다.
+     */
+    void updateLevels(List<User> users);
 }
@@ -10,6 +10,8 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 
 public class UserJdbcDao {
     private JdbcContext jdbcContext;
@@ -36,28 +38,20 @@ public class UserJdbcDao {
     }
 
     public User get(String id) throws SQLException {
-        Connection conn = dataSource.getConnection();
-
-        PreparedStatement ps = conn.prepareStatement("select * from users where id = ?");
-        ps.setString(1, id);
-
-        ResultSet rs = ps.executeQuery();
-        User user = null;
-        if (rs.next()) {
-            user = new User();
+        List<User> users = new ArrayList<>(1);
+        jdbcContext.query("select * from users where id = ?", ps -> ps.setString(1, id), rs -> {
+            User user = new User();
             user.setId(rs.getString("id"));
             user.setName(rs.getString("name"));
             user.setPassword(rs.getString("password"));
-        }
-
-        rs.close();
-        ps.close();
-        conn.close();
+            users.add(user);
+            return false; // id 는 PK 이므로 첫 행에서 멈춘다
+        });
         // 조회된 데이터가 없으면 Exception
-        if (user == null) {
+        if (users.isEmpty()) {
             throw new EmptyResultDataAccessException(1);
         }
-        return user;
+        return users.get(0);
     }
 
     public int getCount() {
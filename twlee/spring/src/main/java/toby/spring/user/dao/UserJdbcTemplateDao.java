@@ -3,48 +3,49 @@ package toby.spring.user.dao;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DuplicateKeyException;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Component;
 import toby.spring.user.domain.Level;
 import toby.spring.user.domain.User;
 import toby.spring.user.exception.DuplicateUserIdException;
 
 import javax.sql.DataSource;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.Collection;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 @Component
 public class UserJdbcTemplateDao implements UserDao {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
-    private RowMapper<User> userRowMapper = (rs, rowNum) -> {
-        User user = new User();
-        user.setId(rs.getString("id"));
-        user.setName(rs.getString("name"));
-        user.setPassword(rs.getString("password"));
-        user.setLevel(Level.valueOf(rs.getInt("level")));
-        user.setLogin(rs.getInt("login"));
-        user.setRecommend(rs.getInt("recommend"));
-        user.setEmail(rs.getString("email"));
-        return user;
-    };
+    private int batchSize = UserBatchSupport.DEFAULT_BATCH_SIZE;
+    private int fetchSize = JdbcContext.DEFAULT_FETCH_SIZE;
 
     public void add(final User user) {
         try {
             jdbcTemplate.update(
                     "insert into users (id, name, password, level, login, recommend, email) values (?, ?, ?, ?, ?, ?, ?)",
-                    user.getId(),
-                    user.getName(),
-                    user.getPassword(),
-                    user.getLevel().intValue(),
-                    user.getLogin(),
-                    user.getRecommend(),
-                    user.getEmail());
+                    UserBinder.insert(user));
         } catch (DuplicateKeyException e) {
             throw new DuplicateUserIdException(e); // 예외 전환
         }
     }
 
+    public void addAll(Collection<User> users) {
+        UserBatchSupport.insertAll(jdbcTemplate,
+                "insert into users (id, name, password, level, login, recommend, email) values (?, ?, ?, ?, ?, ?, ?)",
+                users,
+                batchSize);
+    }
+
+    public void updateLevels(List<User> users) {
+        UserBatchSupport.updateAll(jdbcTemplate, "update users set level = ? where id = ?", users, batchSize, UserBinder.UPDATE_LEVEL);
+    }
+
     public void add_exception(final User user) throws DuplicateKeyException {
         jdbcTemplate.update(
                 "insert into users (id, name, password, level, login, recommend, email) values (?, ?, ?, ?, ?, ?, ?)",
@@ -58,7 +59,7 @@ public class UserJdbcTemplateDao implements UserDao {
 
     public User get(String id) {
         return jdbcTemplate.queryForObject("select * from users where id = ?",
-                userRowMapper,
+                new UserRowMapper(),
                 id);
     }
 
@@ -69,12 +70,78 @@ public class UserJdbcTemplateDao implements UserDao {
         });
     }
 
+    public Map<Level, Integer> getCountByLevel() {
+        return jdbcTemplate.query("select level, count(*) from users group by level", rs -> {
+            Map<Level, Integer> counts = new EnumMap<>(Level.class);
+            for (Level level : Level.values()) {
+                counts.put(level, 0);
+            }
+            while (rs.next()) {
+                counts.put(Level.valueOf(rs.getInt(1)), rs.getInt(2));
+            }
+            return counts;
+        });
+    }
+
     public void deleteAll() {
         jdbcTemplate.update("delete from users");
     }
 
     public List<User> getAll() {
-        return jdbcTemplate.query("select * from users order by id", userRowMapper);
+        return jdbcTemplate.query("select * from users order by id", new UserRowMapper());
+    }
+
+    // OFFSET 대신 기본키 조건으로 건너뛰므로 몇 번째 페이지든 비용이 같다
+    public List<User> getPage(String afterId, int limit) {
+        UserBatchSupport.checkPageLimit(limit);
+        if (afterId == null) {
+            return jdbcTemplate.query("select * from users order by id limit ?", new UserRowMapper(), limit);
+        }
+        return jdbcTemplate.query("select * from users where id > ? order by id limit ?", new UserRowMapper(), afterId, limit);
+    }
+
+    public void forEach(Consumer<User> action) {
+        stream("select * from users order by id", action);
+    }
+
+    public void findUpgradeCandidates(int minLoginForSilver, int minRecommendForGold, Consumer<User> action) {
+        stream("select id, level, login, recommend, email from users where level = ? and login >= ? " +
+                        "union all " +
+                        "select id, level, login, recommend, email from users where level = ? and recommend >= ? " +
+                        "order by id",
+                action,
+                Level.BASIC.intValue(), minLoginForSilver,
+                Level.SILVER.intValue(), minRecommendForGold);
+    }
+
+    // for update 는 union 과 함께 쓸 수 없어서 조건을 or 로 묶는다
+    public void lockUpgradeCandidates(int minLoginForSilver, int minRecommendForGold, Consumer<User> action) {
+        stream("select id, level, login, recommend, email from users " +
+                        "where (level = ? and login >= ?) or (level = ? and recommend >= ?) " +
+                        "order by id for update",
+                action,
+                Level.BASIC.intValue(), minLoginForSilver,
+                Level.SILVER.intValue(), minRecommendForGold);
+    }
+
+    public int upgradeLevels(Collection<User> candidates) {
+        return UserBatchSupport.upgradeLevels(jdbcTemplate, "update users set level = ? where level = ? and id in (?)", candidates, batchSize);
+    }
+
+    public Map<String, Level> getLevelsForUpdate(Collection<String> ids) {
+        return UserBatchSupport.getLevels(jdbcTemplate, "select id, level from users where id in (?) for update", ids, batchSize);
+    }
+
+    private void stream(String sql, Consumer<User> action, Object... args) {
+        jdbcTemplate.query(con -> {
+            // 앞으로만 읽는 커서로 fetchSize 만큼씩 가져온다
+            PreparedStatement ps = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(fetchSize);
+            for (int i = 0; i < args.length; i++) {
+                ps.setObject(i + 1, args[i]);
+            }
+            return ps;
+        }, UserRowMapper.forEach(action));
     }
 
     public void update(User user) {
@@ -87,19 +154,30 @@ public class UserJdbcTemplateDao implements UserDao {
                         "recommend = ?, " +
                         "email = ? " +
                         "where id = ?",
-                user.getName(),
-                user.getPassword(),
-                user.getLevel().intValue(),
-                user.getLogin(),
-                user.getRecommend(),
-                user.getEmail(),
-                user.getId());
+                UserBinder.update(user));
         if (result != 1) {
             throw new RuntimeException("수정 실패");
         }
     }
 
+    public void updateAll(List<User> users) {
+        UserBatchSupport.updateAll(jdbcTemplate,
+                "update users set name = ?, password = ?, level = ?, login = ?, recommend = ?, email = ? where id = ?",
+                users,
+                batchSize,
+                UserBinder.UPDATE);
+    }
+
+    public void setBatchSize(int batchSize) {
+        UserBatchSupport.checkBatchSize(batchSize);
+        this.batchSize = batchSize;
+    }
+
+    public void setFetchSize(int fetchSize) {
+        this.fetchSize = fetchSize;
+    }
+
     public void setDataSource(DataSource dataSource) {
-        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate = new DeadlineAwareJdbcTemplate(dataSource);
     }
 }
@@ -0,0 +1,70 @@
+package toby.spring.user.dao;
+
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import toby.spring.user.domain.Level;
+import toby.spring.user.domain.User;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.Locale;
+import java.util.function.Consumer;
+
+/**
+ * User 전용 RowMapper. 컬럼 이름으로 위치를 찾는 일은 ResultSet 마다 한 번만 하고, 이후 행은 인덱스로 읽는다.
+ * 조회하지 않은 컬럼은 건너뛰므로 일부 컬럼만 select 한 결과에도 쓸 수 있다.
+ * 위치를 기억하는 상태가 있으므로 쿼리마다 새로 만들어 쓴다.
+ */
+public class UserRowMapper implements RowMapper<User> {
+    private ResultSet resolved;
+    private int id;
+    private int name;
+    private int password;
+    private int level;
+    private int login;
+    private int recommend;
+    private int email;
+
+    @Override
+    public User mapRow(ResultSet rs, int rowNum) throws SQLException {
+        if (rs != resolved) {
+            resolve(rs);
+        }
+        User user = new User();
+        if (id > 0) user.setId(rs.getString(id));
+        if (name > 0) user.setName(rs.getString(name));
+        if (password > 0) user.setPassword(rs.getString(password));
+        if (level > 0) user.setLevel(Level.valueOf(rs.getInt(level)));
+        if (login > 0) user.setLogin(rs.getInt(login));
+        if (recommend > 0) user.setRecommend(rs.getInt(recommend));
+        if (email > 0) user.setEmail(rs.getString(email));
+        return user;
+    }
+
+    /**
+     * 행마다 User 로 바꿔서 action 에 넘기는 콜백. 목록을 만들지 않으므로 결과 크기와 상관없이 메모리를 일정하게 쓴다.
+     */
+    public static RowCallbackHandler forEach(Consumer<User> action) {
+        UserRowMapper mapper = new UserRowMapper();
+        return rs -> action.accept(mapper.mapRow(rs, rs.getRow()));
+    }
+
+    private void resolve(ResultSet rs) throws SQLException {
+        id = name = password = level = login = recommend = email = 0;
+        ResultSetMetaData metaData = rs.getMetaData();
+        for (int i = 1; i <= metaData.getColumnCount(); i++) {
+            switch (metaData.getColumnLabel(i).toLowerCase(Locale.ROOT)) {
+                case "id": id = i; break;
+                case "name": name = i; break;
+                case "password": password = i; break;
+                case "level": level = i; break;
+                case "login": login = i; break;
+                case "recommend": recommend = i; break;
+                case "email": email = i; break;
+                default: break;
+            }
+        }
+        resolved = rs;
+    }
+}
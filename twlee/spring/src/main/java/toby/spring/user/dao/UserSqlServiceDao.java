@@ -2,53 +2,44 @@ package toby.spring.user.dao;
 
 import org.springframework.dao.DuplicateKeyException;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.core.RowMapper;
 import toby.spring.user.domain.Level;
 import toby.spring.user.domain.User;
 import toby.spring.user.exception.DuplicateUserIdException;
 import toby.spring.user.sqlservice.SqlService;
 
 import javax.sql.DataSource;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.Collection;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 
 public class UserSqlServiceDao implements UserDao {
     private final JdbcTemplate jdbcTemplate;
     private final SqlService sqlService;
+    private int batchSize = UserBatchSupport.DEFAULT_BATCH_SIZE;
+    private int fetchSize = JdbcContext.DEFAULT_FETCH_SIZE;
 
     public UserSqlServiceDao(DataSource dataSource, SqlService sqlService) {
-        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate = new DeadlineAwareJdbcTemplate(dataSource);
         this.sqlService = sqlService;
     }
 
-    private RowMapper<User> userRowMapper = (rs, rowNum) -> {
-        User user = new User();
-        user.setId(rs.getString("id"));
-        user.setName(rs.getString("name"));
-        user.setPassword(rs.getString("password"));
-        user.setLevel(Level.valueOf(rs.getInt("level")));
-        user.setLogin(rs.getInt("login"));
-        user.setRecommend(rs.getInt("recommend"));
-        user.setEmail(rs.getString("email"));
-        return user;
-    };
-
     public void add(final User user) {
         try {
-            jdbcTemplate.update(
-                    sqlService.getSql("userAdd"),
-                    user.getId(),
-                    user.getName(),
-                    user.getPassword(),
-                    user.getLevel().intValue(),
-                    user.getLogin(),
-                    user.getRecommend(),
-                    user.getEmail());
+            jdbcTemplate.update(sqlService.getSql("userAdd"), UserBinder.insert(user));
         } catch (DuplicateKeyException e) {
             throw new DuplicateUserIdException(e); // 예외 전환
         }
     }
 
+    public void addAll(Collection<User> users) {
+        UserBatchSupport.insertAll(jdbcTemplate, sqlService.getSql("userAdd"), users, batchSize);
+    }
+
     public void add_exception(final User user) throws DuplicateKeyException {
         jdbcTemplate.update(
                 sqlService.getSql("userAddEx"),
@@ -64,7 +55,7 @@ public class UserSqlServiceDao implements UserDao {
     public User get(String id) {
         return jdbcTemplate.queryForObject(
                 sqlService.getSql("userGet"),
-                userRowMapper,
+                new UserRowMapper(),
                 id);
     }
 
@@ -75,26 +66,96 @@ public class UserSqlServiceDao implements UserDao {
         });
     }
 
+    public Map<Level, Integer> getCountByLevel() {
+        return jdbcTemplate.query(sqlService.getSql("userGetCountByLevel"), rs -> {
+            Map<Level, Integer> counts = new EnumMap<>(Level.class);
+            for (Level level : Level.values()) {
+                counts.put(level, 0);
+            }
+            while (rs.next()) {
+                counts.put(Level.valueOf(rs.getInt(1)), rs.getInt(2));
+            }
+            return counts;
+        });
+    }
+
     public void deleteAll() {
         jdbcTemplate.update(sqlService.getSql("userDeleteAll"));
     }
 
     public List<User> getAll() {
-        return jdbcTemplate.query(sqlService.getSql("userGetAll"), userRowMapper);
+        return jdbcTemplate.query(sqlService.getSql("userGetAll"), new UserRowMapper());
+    }
+
+    public List<User> getPage(String afterId, int limit) {
+        UserBatchSupport.checkPageLimit(limit);
+        if (afterId == null) {
+            return jdbcTemplate.query(sqlService.getSql("userGetFirstPage"), new UserRowMapper(), limit);
+        }
+        return jdbcTemplate.query(sqlService.getSql("userGetPageAfter"), new UserRowMapper(), afterId, limit);
+    }
+
+    public void forEach(Consumer<User> action) {
+        stream(sqlService.getSql("userGetAll"), action);
+    }
+
+    public void findUpgradeCandidates(int minLoginForSilver, int minRecommendForGold, Consumer<User> action) {
+        stream(sqlService.getSql("userGetUpgradeCandidates"),
+                action,
+                Level.BASIC.intValue(), minLoginForSilver,
+                Level.SILVER.intValue(), minRecommendForGold);
+    }
+
+    public void lockUpgradeCandidates(int minLoginForSilver, int minRecommendForGold, Consumer<User> action) {
+        stream(sqlService.getSql("userLockUpgradeCandidates"),
+                action,
+                Level.BASIC.intValue(), minLoginForSilver,
+                Level.SILVER.intValue(), minRecommendForGold);
+    }
+
+    public int upgradeLevels(Collection<User> candidates) {
+        return UserBatchSupport.upgradeLevels(jdbcTemplate, sqlService.getSql("userUpgradeLevels"), candidates, batchSize);
+    }
+
+    public Map<String, Level> getLevelsForUpdate(Collection<String> ids) {
+        return UserBatchSupport.getLevels(jdbcTemplate, sqlService.getSql("userGetLevelsForUpdate"), ids, batchSize);
+    }
+
+    private void stream(String sql, Consumer<User> action, Object... args) {
+        jdbcTemplate.query(con -> {
+            // 앞으로만 읽는 커서로 fetchSize 만큼씩 가져온다
+            PreparedStatement ps = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(fetchSize);
+            for (int i = 0; i < args.length; i++) {
+                ps.setObject(i + 1, args[i]);
+            }
+            return ps;
+        }, UserRowMapper.forEach(action));
     }
 
     public void update(User user) {
         int result = jdbcTemplate.update(
                 sqlService.getSql("userUpdate"),
-                user.getName(),
-                user.getPassword(),
-                user.getLevel().intValue(),
-                user.getLogin(),
-                user.getRecommend(),
-                user.getEmail(),
-                user.getId());
+                UserBinder.update(user));
         if (result != 1) {
             throw new RuntimeException("수정 실패");
         }
     }
+
+    public void updateAll(List<User> users) {
+        UserBatchSupport.updateAll(jdbcTemplate, sqlService.getSql("userUpdate"), users, batchSize, UserBinder.UPDATE);
+    }
+
+    public void updateLevels(List<User> users) {
+        UserBatchSupport.updateAll(jdbcTemplate, sqlService.getSql("userUpdateLevel"), users, batchSize, UserBinder.UPDATE_LEVEL);
+    }
+
+    public void setBatchSize(int batchSize) {
+        UserBatchSupport.checkBatchSize(batchSize);
+        this.batchSize = batchSize;
+    }
+
+    public void setFetchSize(int fetchSize) {
+        this.fetchSize = fetchSize;
+    }
 }
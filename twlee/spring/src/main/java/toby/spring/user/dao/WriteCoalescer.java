@@ -0,0 +1,224 @@
+package toby.spring.user.dao;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 여러 스레드가 동시에 보내는 단건 쓰기를 모아 한 트랜잭션, 한 번의 JDBC 배치로 실행하는 그룹 커밋.
+ * 별도 스레드 없이 호출자 중 하나가 리더가 되어 쌓인 작업을 실행하고, 나머지는 자기 결과가 나올 때까지 기다린다.
+ * 배치가 실패하면 롤백한 뒤 한 건씩 다시 실행해서 실패한 호출자에게만 예외를 돌려준다.
+ * 호출자의 트랜잭션과는 무관하게 자체 커넥션으로 커밋하므로 트랜잭션 밖의 쓰기에만 사용한다.
+ */
+public class WriteCoalescer {
+    // 깨우는 신호를 놓쳤을 때를 대비해 팔로워가 주기적으로 다시 확인하는 간격
+    private static final long FOLLOWER_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final DataSource dataSource;
+    private final ConcurrentLinkedQueue<PendingWrite> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean leading = new AtomicBoolean();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder writes = new LongAdder();
+
+    private int maxBatchSize = 100;
+    private long maxWaitMicros;
+
+    public WriteCoalescer(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * 쓰기를 대기열에 넣고 실행될 때까지 기다린다.
+     *
+     * @return 갱신된 행 수
+     */
+    public int submit(BatchStatementStrategy stmt) throws SQLException {
+        PendingWrite write = new PendingWrite(stmt);
+        queue.add(write);
+        boolean interrupted = false;
+        try {
+            while (!write.result.isDone()) {
+                if (leading.compareAndSet(false, true)) {
+                    try {
+                        lead(write);
+                    } finally {
+                        leading.set(false);
+                        wakeUpNextLeader();
+                    }
+                    continue;
+                }
+                LockSupport.parkNanos(this, FOLLOWER_PARK_NANOS);
+                if (Thread.interrupted()) {
+                    interrupted = true;
+                    // 아직 리더가 가져가지 않았으면 취소하고, 이미 가져갔으면 리더가 끝낼 결과를 기다린다
+                    if (queue.remove(write)) {
+                        throw new SQLException("쓰기 대기 중 인터럽트");
+                    }
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return resultOf(write);
+    }
+
+    // 리더가 물러날 때 남은 작업이 있으면 그 작업의 호출자를 깨워 다음 리더가 되게 한다
+    private void wakeUpNextLeader() {
+        PendingWrite next = queue.peek();
+        if (next != null) {
+            LockSupport.unpark(next.waiter);
+        }
+    }
+
+    // 리더는 자기 작업이 끝날 때까지 쌓인 작업을 maxBatchSize 씩 실행한다
+    private void lead(PendingWrite own) {
+        while (!own.result.isDone()) {
+            linger();
+            List<PendingWrite> batch = new ArrayList<>();
+            PendingWrite write;
+            while (batch.size() < maxBatchSize && (write = queue.poll()) != null) {
+                batch.add(write);
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+            execute(batch);
+        }
+    }
+
+    // maxWait 가 있으면 배치가 찰 때까지 잠깐 기다린다. 기본값 0 은 기다리지 않고 리더가 실행하는 동안 쌓인 만큼만 묶는다
+    private void linger() {
+        if (maxWaitMicros <= 0) {
+            return;
+        }
+        long deadline = System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(maxWaitMicros);
+        while (queue.size() < maxBatchSize && System.nanoTime() - deadline < 0) {
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(50));
+        }
+    }
+
+    private int resultOf(PendingWrite write) throws SQLException {
+        try {
+            return write.result.join();
+        } catch (RuntimeException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException) {
+                throw (SQLException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw e;
+        }
+    }
+
+    private void execute(List<PendingWrite> batch) {
+        batches.increment();
+        writes.add(batch.size());
+        try (Connection conn = dataSource.getConnection()) {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try {
+                int[] counts = executeBatch(conn, batch);
+                conn.commit();
+                for (int i = 0; i < batch.size(); i++) {
+                    batch.get(i).complete(counts[i]);
+                }
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                executeOneByOne(conn, batch);
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException | RuntimeException e) {
+            for (PendingWrite write : batch) {
+                write.fail(e);
+            }
+        }
+    }
+
+    // 같은 SQL 이 연속된 구간마다 PreparedStatement 하나로 배치를 실행하고, 작업 순서대로 갱신 수를 모은다
+    private int[] executeBatch(Connection conn, List<PendingWrite> batch) throws SQLException {
+        int[] counts = new int[batch.size()];
+        int start = 0;
+        while (start < batch.size()) {
+            String sql = batch.get(start).stmt.getSql();
+            int end = start;
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                while (end < batch.size() && batch.get(end).stmt.getSql().equals(sql)) {
+                    batch.get(end).stmt.setValues(ps);
+                    ps.addBatch();
+                    end++;
+                }
+                int[] segment = ps.executeBatch();
+                System.arraycopy(segment, 0, counts, start, segment.length);
+            }
+            start = end;
+        }
+        return counts;
+    }
+
+    private void executeOneByOne(Connection conn, List<PendingWrite> batch) throws SQLException {
+        conn.setAutoCommit(true);
+        for (PendingWrite write : batch) {
+            try (PreparedStatement ps = write.stmt.makePreparedStatement(conn)) {
+                write.complete(ps.executeUpdate());
+            } catch (SQLException | RuntimeException e) {
+                write.fail(e);
+            }
+        }
+    }
+
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    public long getWriteCount() {
+        return writes.sum();
+    }
+
+    public void setMaxBatchSize(int maxBatchSize) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize 는 1 이상이어야 합니다: " + maxBatchSize);
+        }
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * 리더가 배치를 채우기 위해 기다리는 최대 시간(마이크로초). 0 이면 기다리지 않는다.
+     */
+    public void setMaxWaitMicros(long maxWaitMicros) {
+        this.maxWaitMicros = maxWaitMicros;
+    }
+
+    private static final class PendingWrite {
+        private final BatchStatementStrategy stmt;
+        private final Thread waiter = Thread.currentThread();
+        private final CompletableFuture<Integer> result = new CompletableFuture<>();
+
+        private PendingWrite(BatchStatementStrategy stmt) {
+            this.stmt = stmt;
+        }
+
+        private void complete(int count) {
+            result.complete(count);
+            LockSupport.unpark(waiter);
+        }
+
+        private void fail(Throwable e) {
+            result.completeExceptionally(e);
+            LockSupport.unpark(waiter);
+        }
+    }
+}
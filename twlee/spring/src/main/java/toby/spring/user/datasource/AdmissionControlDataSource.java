@@ -0,0 +1,175 @@
+package toby.spring.user.datasource;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 동시에 DB 작업을 수행할 수 있는 수를 제한하는 DataSource 데코레이터.
+ * 커넥션을 쥐고 있는 동안을 하나의 작업으로 보고, 한도를 넘는 요청은 공정한 순서로 대기시킨다.
+ * 대기열이 가득 차면 바로 실패시키고, 대기 시간이 queueTimeout 을 넘어도 실패시킨다.
+ * 가상 스레드처럼 요청 스레드가 많아지는 환경에서 DB 가 한꺼번에 몰리는 것을 막는 용도다.
+ */
+public class AdmissionControlDataSource extends DelegatingDataSource implements AutoCloseable {
+    private final int maxConcurrency;
+    private final int maxQueueSize;
+    private final Semaphore permits;
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+    private final LatencyHistogram waitTime = new LatencyHistogram();
+
+    private long queueTimeoutMillis = 1_000;
+
+    public AdmissionControlDataSource(DataSource targetDataSource, int maxConcurrency, int maxQueueSize) {
+        super(targetDataSource);
+        this.maxConcurrency = maxConcurrency;
+        this.maxQueueSize = maxQueueSize;
+        this.permits = new Semaphore(maxConcurrency, true);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        admit();
+        try {
+            return withPermit(super.getConnection());
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        admit();
+        try {
+            return withPermit(super.getConnection(username, password));
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private void admit() throws SQLException {
+        long start = System.nanoTime();
+        try {
+            // 공정성을 지키려면 인자 없는 tryAcquire() 대신 타임아웃 0 버전을 써야 한다
+            if (permits.tryAcquire(0, TimeUnit.MILLISECONDS)) {
+                admitted.increment();
+                waitTime.record(0);
+                return;
+            }
+            if (queueDepth.incrementAndGet() > maxQueueSize) {
+                queueDepth.decrementAndGet();
+                rejected.increment();
+                throw new SQLTransientConnectionException("DB 작업 대기열이 가득 찼습니다 (maxQueueSize=" + maxQueueSize + ")");
+            }
+            try {
+                if (!permits.tryAcquire(queueTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                    timedOut.increment();
+                    throw new SQLTransientConnectionException(queueTimeoutMillis + "ms 동안 DB 작업 차례를 얻지 못했습니다");
+                }
+            } finally {
+                queueDepth.decrementAndGet();
+                waitTime.record(System.nanoTime() - start);
+            }
+            admitted.increment();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException("DB 작업 대기 중 인터럽트", e);
+        }
+    }
+
+    private Connection withPermit(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(),
+                new Class[]{Connection.class},
+                new PermitReleasingHandler(connection));
+    }
+
+    public int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    public int getActiveCount() {
+        return maxConcurrency - permits.availablePermits();
+    }
+
+    public long getAdmittedCount() {
+        return admitted.sum();
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    public long getTimedOutCount() {
+        return timedOut.sum();
+    }
+
+    public LatencyHistogram.Snapshot getWaitTime() {
+        return waitTime.snapshot();
+    }
+
+    public void setQueueTimeoutMillis(long queueTimeoutMillis) {
+        this.queueTimeoutMillis = queueTimeoutMillis;
+    }
+
+    /**
+     * 감싼 DataSource 도 닫을 수 있으면 함께 닫는다. 안쪽 LeakDetectingDataSource 의 감지 스레드 같은 자원이 남지 않게 한다.
+     */
+    @Override
+    public void close() throws Exception {
+        DataSource target = getTargetDataSource();
+        if (target instanceof AutoCloseable) {
+            ((AutoCloseable) target).close();
+        }
+    }
+
+    private final class PermitReleasingHandler implements InvocationHandler {
+        private final Connection target;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private PermitReleasingHandler(Connection target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    try {
+                        target.close();
+                    } finally {
+                        if (released.compareAndSet(false, true)) {
+                            permits.release();
+                        }
+                    }
+                    return null;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    try {
+                        return method.invoke(target, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getTargetException();
+                    }
+            }
+        }
+    }
+}
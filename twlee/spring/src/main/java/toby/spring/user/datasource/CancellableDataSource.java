@@ -0,0 +1,108 @@
+package toby.spring.user.datasource;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * 현재 스레드에 StatementCancellation 이 바인딩되어 있으면 커넥션에서 만든 Statement 를 거기에 등록하는 데코레이터.
+ * 비동기 DAO 의 Future 를 취소했을 때 DB 쪽 쿼리까지 멈출 수 있게 한다.
+ * 등록한 Statement 는 execute 직전에 취소 여부를 확인해서, 실행 전에 취소된 쿼리는 보내지 않는다.
+ */
+public class CancellableDataSource extends DelegatingDataSource {
+
+    public CancellableDataSource(DataSource targetDataSource) {
+        super(targetDataSource);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return cancellable(super.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return cancellable(super.getConnection(username, password));
+    }
+
+    private Connection cancellable(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(),
+                new Class[]{Connection.class},
+                new StatementRegisteringHandler(connection));
+    }
+
+    private static final class StatementRegisteringHandler implements InvocationHandler {
+        private final Connection target;
+
+        private StatementRegisteringHandler(Connection target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    break;
+            }
+            Object result;
+            try {
+                result = method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+            // createStatement, prepareStatement, prepareCall 결과를 등록한다
+            StatementCancellation cancellation = StatementCancellation.current();
+            if (cancellation != null && result instanceof Statement) {
+                cancellation.register((Statement) result);
+                return Proxy.newProxyInstance(
+                        Statement.class.getClassLoader(),
+                        new Class[]{method.getReturnType()},
+                        new CancellationCheckingHandler((Statement) result, cancellation));
+            }
+            return result;
+        }
+    }
+
+    private static final class CancellationCheckingHandler implements InvocationHandler {
+        private final Statement target;
+        private final StatementCancellation cancellation;
+
+        private CancellationCheckingHandler(Statement target, StatementCancellation cancellation) {
+            this.target = target;
+            this.cancellation = cancellation;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    break;
+            }
+            // execute, executeQuery, executeUpdate, executeBatch, executeLargeUpdate ...
+            if (method.getName().startsWith("execute")) {
+                cancellation.checkNotCancelled();
+            }
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package toby.spring.user.datasource;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 커넥션 획득 횟수, 획득 지연시간, 점유 시간, 현재 열린 커넥션 수를 기록한다.
+ * ConnectionMaker 와 DataSource 데코레이터가 같이 사용한다.
+ */
+public class ConnectionMetrics {
+    private final LongAdder acquisitions = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final AtomicInteger openConnections = new AtomicInteger();
+    private final LongAccumulator peakOpenConnections = new LongAccumulator(Math::max, 0);
+    private final LatencyHistogram acquireLatency = new LatencyHistogram();
+    private final LatencyHistogram holdTime = new LatencyHistogram();
+
+    /**
+     * 획득에 성공한 커넥션을 기록하고, close() 시점에 점유 시간을 기록하는 프록시로 감싸서 돌려준다.
+     */
+    public Connection acquired(Connection connection, long startNanos) {
+        long now = System.nanoTime();
+        acquisitions.increment();
+        acquireLatency.record(now - startNanos);
+        peakOpenConnections.accumulate(openConnections.incrementAndGet());
+        return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(),
+                new Class[]{Connection.class},
+                new HoldTimeHandler(connection, now));
+    }
+
+    public void failed(long startNanos) {
+        failures.increment();
+        acquireLatency.record(System.nanoTime() - startNanos);
+    }
+
+    public long getAcquisitionCount() {
+        return acquisitions.sum();
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(acquisitions.sum(), failures.sum(), openConnections.get(), peakOpenConnections.get(),
+                acquireLatency.snapshot(), holdTime.snapshot());
+    }
+
+    private final class HoldTimeHandler implements InvocationHandler {
+        private final Connection target;
+        private final long acquiredAt;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private HoldTimeHandler(Connection target, long acquiredAt) {
+            this.target = target;
+            this.acquiredAt = acquiredAt;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (closed.compareAndSet(false, true)) {
+                        openConnections.decrementAndGet();
+                        holdTime.record(System.nanoTime() - acquiredAt);
+                    }
+                    break;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    break;
+            }
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+        }
+    }
+
+    public static class Snapshot {
+        private final long acquisitions;
+        private final long failures;
+        private final int openConnections;
+        private final long peakOpenConnections;
+        private final LatencyHistogram.Snapshot acquireLatency;
+        private final LatencyHistogram.Snapshot holdTime;
+
+        private Snapshot(long acquisitions, long failures, int openConnections, long peakOpenConnections,
+                         LatencyHistogram.Snapshot acquireLatency, LatencyHistogram.Snapshot holdTime) {
+            this.acquisitions = acquisitions;
+            this.failures = failures;
+            this.openConnections = openConnections;
+            this.peakOpenConnections = peakOpenConnections;
+            this.acquireLatency = acquireLatency;
+            this.holdTime = holdTime;
+        }
+
+        public long getAcquisitions() {
+            return acquisitions;
+        }
+
+        public long getFailures() {
+            return failures;
+        }
+
+        public int getOpenConnections() {
+            return openConnections;
+        }
+
+        public long getPeakOpenConnections() {
+            return peakOpenConnections;
+        }
+
+        public LatencyHistogram.Snapshot getAcquireLatency() {
+            return acquireLatency;
+        }
+
+        public LatencyHistogram.Snapshot getHoldTime() {
+            return holdTime;
+        }
+
+        /**
+         * 수집기에서 긁어가기 쉽도록 이름-값 쌍으로 펼친다.
+         */
+        public Map<String, Number> toMap() {
+            Map<String, Number> map = new LinkedHashMap<>();
+            map.put("connections.acquired", acquisitions);
+            map.put("connections.failed", failures);
+            map.put("connections.open", openConnections);
+            map.put("connections.open.peak", peakOpenConnections);
+            map.put("connections.acquire.mean.nanos", acquireLatency.getMeanNanos());
+            map.put("connections.acquire.p50.nanos", acquireLatency.getPercentileNanos(50));
+            map.put("connections.acquire.p99.nanos", acquireLatency.getPercentileNanos(99));
+            map.put("connections.acquire.max.nanos", acquireLatency.getMaxNanos());
+            map.put("connections.hold.mean.nanos", holdTime.getMeanNanos());
+            map.put("connections.hold.p50.nanos", holdTime.getPercentileNanos(50));
+            map.put("connections.hold.p99.nanos", holdTime.getPercentileNanos(99));
+            map.put("connections.hold.max.nanos", holdTime.getMaxNanos());
+            return map;
+        }
+
+        @Override
+        public String toString() {
+            return "acquired=" + acquisitions +
+                    ", failed=" + failures +
+                    ", open=" + openConnections +
+                    ", peakOpen=" + peakOpenConnections +
+                    ", acquire=[" + acquireLatency + "]" +
+                    ", hold=[" + holdTime + "]";
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package toby.spring.user.datasource;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * 타깃 DataSource 에서 얻는 커넥션의 획득/점유 지표를 ConnectionMetrics 에 기록하는 데코레이터.
+ */
+public class CountingDataSource extends DelegatingDataSource {
+    private final ConnectionMetrics metrics = new ConnectionMetrics();
+
+    public CountingDataSource(DataSource targetDataSource) {
+        super(targetDataSource);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return metrics.acquired(super.getConnection(), start);
+        } catch (SQLException | RuntimeException e) {
+            metrics.failed(start);
+            throw e;
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return metrics.acquired(super.getConnection(username, password), start);
+        } catch (SQLException | RuntimeException e) {
+            metrics.failed(start);
+            throw e;
+        }
+    }
+
+    public ConnectionMetrics.Snapshot getMetrics() {
+        return metrics.snapshot();
+    }
+}
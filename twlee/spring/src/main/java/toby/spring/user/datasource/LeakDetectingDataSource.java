@@ -0,0 +1,267 @@
+package toby.spring.user.datasource;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 커넥션을 빌려간 위치(스택 트레이스)를 기록해 두고, leakThreshold 보다 오래 반납되지 않은 커넥션을 누수로 보고하는 데코레이터.
+ * reclaimLeakedConnections 를 켜면 누수로 판단한 커넥션을 강제로 닫아 풀로 돌려보낸다.
+ * 빌려간 쪽이 그 커넥션으로 호출하는 중이면 호출이 끝난 뒤에 닫고, 그 뒤의 호출은 실패시킨다.
+ * 빌릴 때마다 스택 트레이스를 만드는 비용이 있으므로 운영에서는 필요할 때만 켠다.
+ */
+@Slf4j
+public class LeakDetectingDataSource extends DelegatingDataSource implements AutoCloseable {
+    private static final int MAX_REPORTS = 100;
+
+    private final Set<Borrow> borrowed = ConcurrentHashMap.newKeySet();
+    private final ConcurrentLinkedDeque<LeakReport> reports = new ConcurrentLinkedDeque<>();
+    private final LongAdder leaks = new LongAdder();
+    private final LongAdder reclaimed = new LongAdder();
+
+    private long leakThresholdMillis = 60_000;
+    private boolean reclaimLeakedConnections;
+    private ScheduledExecutorService scheduler;
+
+    public LeakDetectingDataSource(DataSource targetDataSource) {
+        super(targetDataSource);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return track(super.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return track(super.getConnection(username, password));
+    }
+
+    private Connection track(Connection connection) {
+        Borrow borrow = new Borrow(connection);
+        borrowed.add(borrow);
+        return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(),
+                new Class[]{Connection.class},
+                borrow);
+    }
+
+    /**
+     * intervalMillis 마다 데몬 스레드에서 detectLeaks() 를 실행한다.
+     */
+    public synchronized void startLeakDetection(long intervalMillis) {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "connection-leak-detector");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::detectLeaks, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 임계값을 넘긴 커넥션을 찾아 한 번씩만 보고한다.
+     *
+     * @return 이번에 새로 찾은 누수 수
+     */
+    public int detectLeaks() {
+        long now = System.currentTimeMillis();
+        int found = 0;
+        for (Borrow borrow : borrowed) {
+            if (now - borrow.borrowedAt < leakThresholdMillis || !borrow.reported.compareAndSet(false, true)) {
+                continue;
+            }
+            found++;
+            leaks.increment();
+            LeakReport report = new LeakReport(borrow.threadName, now - borrow.borrowedAt, borrow.borrowSite.getStackTrace());
+            addReport(report);
+            log.warn("커넥션 누수 의심: {}ms 동안 반납되지 않음, 위치={}", report.getHeldMillis(), report.getLocation(), borrow.borrowSite);
+
+            if (reclaimLeakedConnections) {
+                borrow.reclaim();
+            }
+        }
+        return found;
+    }
+
+    private void addReport(LeakReport report) {
+        reports.addLast(report);
+        while (reports.size() > MAX_REPORTS) {
+            reports.pollFirst();
+        }
+    }
+
+    public int getBorrowedCount() {
+        return borrowed.size();
+    }
+
+    public long getLeakCount() {
+        return leaks.sum();
+    }
+
+    public long getReclaimedCount() {
+        return reclaimed.sum();
+    }
+
+    /**
+     * 최근 보고된 누수 목록 (최대 100건)
+     */
+    public List<LeakReport> getLeakReports() {
+        return Collections.unmodifiableList(new ArrayList<>(reports));
+    }
+
+    public void setLeakThresholdMillis(long leakThresholdMillis) {
+        this.leakThresholdMillis = leakThresholdMillis;
+    }
+
+    public void setReclaimLeakedConnections(boolean reclaimLeakedConnections) {
+        this.reclaimLeakedConnections = reclaimLeakedConnections;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    private final class Borrow implements InvocationHandler {
+        private final Connection target;
+        private final long borrowedAt = System.currentTimeMillis();
+        private final String threadName = Thread.currentThread().getName();
+        private final Throwable borrowSite = new Throwable("커넥션을 빌려간 위치");
+        private final AtomicBoolean reported = new AtomicBoolean();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private volatile boolean reclaimed;
+        // 진행 중인 호출 수. 회수할 때 0 이 아니면 마지막 호출이 끝나면서 닫는다
+        private final AtomicInteger activeCalls = new AtomicInteger();
+        private final AtomicBoolean targetClosed = new AtomicBoolean();
+
+        private Borrow(Connection target) {
+            this.target = target;
+        }
+
+        private void reclaim() {
+            if (!closed.compareAndSet(false, true)) {
+                return;
+            }
+            reclaimed = true;
+            borrowed.remove(this);
+            LeakDetectingDataSource.this.reclaimed.increment();
+            closeIfIdle();
+        }
+
+        private void closeIfIdle() {
+            if (activeCalls.get() != 0 || !targetClosed.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                target.close();
+            } catch (SQLException e) {
+                log.warn("누수 커넥션을 닫는 중 오류", e);
+            }
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (closed.compareAndSet(false, true)) {
+                        borrowed.remove(this);
+                        target.close();
+                    }
+                    return null;
+                case "isClosed":
+                    return closed.get() || target.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    activeCalls.incrementAndGet();
+                    try {
+                        if (reclaimed) {
+                            throw new SQLException("누수로 판단되어 강제로 닫힌 커넥션입니다");
+                        }
+                        return method.invoke(target, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getTargetException();
+                    } finally {
+                        if (activeCalls.decrementAndGet() == 0 && reclaimed) {
+                            closeIfIdle();
+                        }
+                    }
+            }
+        }
+    }
+
+    public static class LeakReport {
+        private final String threadName;
+        private final long heldMillis;
+        private final StackTraceElement[] stackTrace;
+
+        private LeakReport(String threadName, long heldMillis, StackTraceElement[] stackTrace) {
+            this.threadName = threadName;
+            this.heldMillis = heldMillis;
+            this.stackTrace = stackTrace;
+        }
+
+        public String getThreadName() {
+            return threadName;
+        }
+
+        public long getHeldMillis() {
+            return heldMillis;
+        }
+
+        public StackTraceElement[] getStackTrace() {
+            return stackTrace.clone();
+        }
+
+        /**
+         * DataSource 래퍼, 스프링 JDBC 지원 코드, 프록시를 건너뛴 첫 호출 위치. 보통 커넥션을 빌려간 DAO 메소드다.
+         */
+        public String getLocation() {
+            for (StackTraceElement element : stackTrace) {
+                String className = element.getClassName();
+                if (className.startsWith("toby.spring.user.datasource.")
+                        || className.startsWith("org.springframework.jdbc.")
+                        || className.startsWith("java.")
+                        || className.startsWith("jdk.")
+                        || className.startsWith("com.sun.proxy.")
+                        || className.contains("$Proxy")) {
+                    continue;
+                }
+                return element.toString();
+            }
+            return stackTrace.length == 0 ? "unknown" : stackTrace[0].toString();
+        }
+
+        @Override
+        public String toString() {
+            return "thread=" + threadName + ", held=" + heldMillis + "ms, location=" + getLocation();
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package toby.spring.user.datasource;
+
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import toby.spring.user.dao.PoolingConnectionMaker;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+
+/**
+ * PoolingConnectionMaker 를 DataSource 로 노출한다. JdbcTemplate 을 쓰는 DAO 들도 같은 풀을 쓸 수 있다.
+ */
+public class PoolingDataSource extends AbstractDataSource implements AutoCloseable {
+    private final PoolingConnectionMaker pool;
+
+    public PoolingDataSource(PoolingConnectionMaker pool) {
+        this.pool = pool;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        try {
+            return pool.makeConnection();
+        } catch (ClassNotFoundException e) {
+            throw new SQLException(e);
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("풀 커넥션은 계정을 바꿔서 얻을 수 없습니다");
+    }
+
+    public PoolingConnectionMaker getPool() {
+        return pool;
+    }
+
+    @Override
+    public void close() {
+        pool.close();
+    }
+}
@@ -0,0 +1,121 @@
+package toby.spring.user.datasource;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 읽기 전용 트랜잭션(@Transactional(readOnly = true))은 레플리카로, 나머지는 프라이머리로 보내는 DataSource.
+ * 트랜잭션 매니저가 커넥션을 가져가는 시점에는 아직 readOnly 여부가 동기화되지 않으므로
+ * 반드시 LazyConnectionDataSourceProxy 로 감싸서 사용해야 한다.
+ */
+public class ReadWriteRoutingDataSource extends AbstractRoutingDataSource {
+    public static final String PRIMARY = "primary";
+    private static final String REPLICA_PREFIX = "replica-";
+
+    private final CountingDataSource primary;
+    private final List<Replica> replicas = new ArrayList<>();
+    private final AtomicInteger nextReplica = new AtomicInteger();
+    private final LongAdder fallbacks = new LongAdder();
+
+    private ReplicationLagChecker lagChecker = replica -> 0;
+    private long maxReplicaLagMillis = 1_000;
+    private long lagCheckIntervalMillis = 1_000;
+
+    public ReadWriteRoutingDataSource(DataSource primary, List<DataSource> replicas) {
+        this.primary = new CountingDataSource(primary);
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, this.primary);
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = new Replica(REPLICA_PREFIX + i, new CountingDataSource(replicas.get(i)));
+            this.replicas.add(replica);
+            targets.put(replica.key, replica.dataSource);
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(this.primary);
+        afterPropertiesSet();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly() || replicas.isEmpty()) {
+            return PRIMARY;
+        }
+        // 라운드로빈으로 고르되 복제 지연이 큰 레플리카는 건너뛴다
+        int start = Math.floorMod(nextReplica.getAndIncrement(), replicas.size());
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = replicas.get((start + i) % replicas.size());
+            if (replica.isHealthy()) {
+                return replica.key;
+            }
+        }
+        fallbacks.increment();
+        return PRIMARY;
+    }
+
+    /**
+     * 대상별 커넥션 지표. 키는 primary, replica-0, replica-1 ... 이다.
+     */
+    public Map<String, ConnectionMetrics.Snapshot> getMetrics() {
+        Map<String, ConnectionMetrics.Snapshot> metrics = new LinkedHashMap<>();
+        metrics.put(PRIMARY, primary.getMetrics());
+        for (Replica replica : replicas) {
+            metrics.put(replica.key, replica.dataSource.getMetrics());
+        }
+        return Collections.unmodifiableMap(metrics);
+    }
+
+    /**
+     * 읽기 전용 요청이었지만 쓸 수 있는 레플리카가 없어 프라이머리로 보낸 횟수
+     */
+    public long getFallbackCount() {
+        return fallbacks.sum();
+    }
+
+    public void setLagChecker(ReplicationLagChecker lagChecker) {
+        this.lagChecker = lagChecker;
+    }
+
+    public void setMaxReplicaLagMillis(long maxReplicaLagMillis) {
+        this.maxReplicaLagMillis = maxReplicaLagMillis;
+    }
+
+    public void setLagCheckIntervalMillis(long lagCheckIntervalMillis) {
+        this.lagCheckIntervalMillis = lagCheckIntervalMillis;
+    }
+
+    private final class Replica {
+        private final String key;
+        private final CountingDataSource dataSource;
+        private volatile long lastCheckedAt;
+        private volatile boolean healthy = true;
+
+        private Replica(String key, CountingDataSource dataSource) {
+            this.key = key;
+            this.dataSource = dataSource;
+        }
+
+        // 매 요청마다 지연을 확인하면 그 자체가 부하가 되므로 일정 주기로만 확인한다
+        private boolean isHealthy() {
+            long now = System.currentTimeMillis();
+            if (now - lastCheckedAt >= lagCheckIntervalMillis) {
+                lastCheckedAt = now;
+                try {
+                    healthy = lagChecker.getLagMillis(dataSource.getTargetDataSource()) <= maxReplicaLagMillis;
+                } catch (Exception e) {
+                    healthy = false;
+                }
+            }
+            return healthy;
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package toby.spring.user.datasource;
+
+import javax.sql.DataSource;
+
+/**
+ * 레플리카가 프라이머리보다 얼마나 뒤처져 있는지(ms) 알려준다. 확인에 실패하면 예외를 던진다.
+ */
+public interface ReplicationLagChecker {
+    long getLagMillis(DataSource replica) throws Exception;
+}
@@ -0,0 +1,249 @@
+package toby.spring.user.datasource;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * SQL 별 실행 시간을 기록하는 DataSource 데코레이터. JdbcContext 든 JdbcTemplate 이든 이 DataSource 를 거치면 모두 기록된다.
+ * 리터럴을 ? 로 바꾼 정규화된 SQL 마다 히스토그램을 두고, slowQueryThreshold 를 넘긴 실행은 바인딩 값의 타입과 함께 로그로 남긴다.
+ * 바인딩 값에는 비밀번호 같은 개인 정보가 들어 있으므로 값 자체는 남기지 않는다.
+ * 처음 느리게 실행된 SQL 은 같은 커넥션에서 H2 의 EXPLAIN 을 돌려 실행 계획을 저장해 둔다.
+ */
+@Slf4j
+public class SqlMonitoringDataSource extends DelegatingDataSource {
+    private static final int MAX_DISTINCT_SQL = 1_000;
+    private static final String OTHER_SQL = "(other)";
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("\\b\\d+(?:\\.\\d+)?\\b");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Pattern EXPLAINABLE = Pattern.compile("^(select|insert|update|delete|merge)\\b.*", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    private final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private final Map<String, String> explainPlans = new ConcurrentHashMap<>();
+    private final LongAdder slowQueries = new LongAdder();
+
+    private long slowQueryThresholdMillis = 100;
+    private boolean explainSlowQueries = true;
+
+    public SqlMonitoringDataSource(DataSource targetDataSource) {
+        super(targetDataSource);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return monitored(super.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return monitored(super.getConnection(username, password));
+    }
+
+    private Connection monitored(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(),
+                new Class[]{Connection.class},
+                new ConnectionHandler(connection));
+    }
+
+    /**
+     * 리터럴과 공백을 정리해서 값만 다른 SQL 이 같은 키로 모이게 한다.
+     */
+    static String normalize(String sql) {
+        String normalized = STRING_LITERAL.matcher(sql).replaceAll("?");
+        normalized = NUMBER_LITERAL.matcher(normalized).replaceAll("?");
+        return WHITESPACE.matcher(normalized).replaceAll(" ").trim();
+    }
+
+    private void record(Connection connection, String sql, Map<Integer, Object> binds, long elapsedNanos, boolean batch) {
+        String key = normalize(sql);
+        LatencyHistogram histogram = histograms.get(key);
+        if (histogram == null) {
+            // 정규화되지 않는 동적 SQL 이 쌓여서 메모리를 먹지 않도록 종류 수를 제한한다
+            String bucket = histograms.size() < MAX_DISTINCT_SQL ? key : OTHER_SQL;
+            histogram = histograms.computeIfAbsent(bucket, k -> new LatencyHistogram());
+        }
+        histogram.record(elapsedNanos);
+
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+        if (elapsedMillis < slowQueryThresholdMillis) {
+            return;
+        }
+        slowQueries.increment();
+        log.warn("느린 쿼리 {}ms: {} binds={}", elapsedMillis, sql, batch ? "(batch)" : describe(binds));
+        if (explainSlowQueries && !batch && EXPLAINABLE.matcher(sql.trim()).matches() && !explainPlans.containsKey(key)) {
+            String plan = explain(connection, sql, binds);
+            if (explainPlans.putIfAbsent(key, plan) == null) {
+                log.warn("실행 계획: {}\n{}", key, plan);
+            }
+        }
+    }
+
+    private String explain(Connection connection, String sql, Map<Integer, Object> binds) {
+        try (PreparedStatement ps = connection.prepareStatement("EXPLAIN " + sql)) {
+            for (Map.Entry<Integer, Object> bind : binds.entrySet()) {
+                ps.setObject(bind.getKey(), bind.getValue());
+            }
+            StringBuilder plan = new StringBuilder();
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    plan.append(rs.getString(1)).append('\n');
+                }
+            }
+            return plan.toString().trim();
+        } catch (SQLException e) {
+            return "EXPLAIN 실패: " + e.getMessage();
+        }
+    }
+
+    static String describe(Map<Integer, Object> binds) {
+        StringBuilder builder = new StringBuilder("[");
+        for (Object value : binds.values()) {
+            if (builder.length() > 1) {
+                builder.append(", ");
+            }
+            builder.append(value == null ? "null" : value.getClass().getSimpleName());
+        }
+        return builder.append(']').toString();
+    }
+
+    /**
+     * 정규화된 SQL 별 실행 시간 통계
+     */
+    public Map<String, LatencyHistogram.Snapshot> getStatistics() {
+        Map<String, LatencyHistogram.Snapshot> statistics = new LinkedHashMap<>();
+        histograms.forEach((sql, histogram) -> statistics.put(sql, histogram.snapshot()));
+        return Collections.unmodifiableMap(statistics);
+    }
+
+    /**
+     * 느린 쿼리로 잡혔던 SQL 별 실행 계획
+     */
+    public Map<String, String> getExplainPlans() {
+        return Collections.unmodifiableMap(explainPlans);
+    }
+
+    public long getSlowQueryCount() {
+        return slowQueries.sum();
+    }
+
+    public void setSlowQueryThresholdMillis(long slowQueryThresholdMillis) {
+        this.slowQueryThresholdMillis = slowQueryThresholdMillis;
+    }
+
+    public void setExplainSlowQueries(boolean explainSlowQueries) {
+        this.explainSlowQueries = explainSlowQueries;
+    }
+
+    private final class ConnectionHandler implements InvocationHandler {
+        private final Connection target;
+
+        private ConnectionHandler(Connection target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    break;
+            }
+            Object result;
+            try {
+                result = method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+            // createStatement, prepareStatement, prepareCall 이 돌려준 Statement 를 감싼다
+            if (result instanceof Statement) {
+                String sql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : null;
+                return Proxy.newProxyInstance(
+                        Statement.class.getClassLoader(),
+                        new Class[]{method.getReturnType()},
+                        new StatementHandler(target, (Connection) proxy, (Statement) result, sql));
+            }
+            return result;
+        }
+    }
+
+    private final class StatementHandler implements InvocationHandler {
+        private final Connection connection;
+        private final Connection connectionProxy;
+        private final Statement target;
+        private final String preparedSql;
+        private final Map<Integer, Object> binds = new TreeMap<>();
+
+        private StatementHandler(Connection connection, Connection connectionProxy, Statement target, String preparedSql) {
+            this.connection = connection;
+            this.connectionProxy = connectionProxy;
+            this.target = target;
+            this.preparedSql = preparedSql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            switch (name) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "getConnection":
+                    return connectionProxy;
+                case "clearParameters":
+                    binds.clear();
+                    break;
+                default:
+                    // setString(1, "a"), setInt(2, 3), setNull(3, Types.VARCHAR) ... 의 값을 기억해 둔다
+                    if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+                        binds.put((Integer) args[0], name.equals("setNull") ? null : args[1]);
+                    }
+                    break;
+            }
+            if (!name.startsWith("execute")) {
+                return invokeTarget(method, args);
+            }
+
+            String sql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : preparedSql;
+            long start = System.nanoTime();
+            try {
+                return invokeTarget(method, args);
+            } finally {
+                if (sql != null) {
+                    record(connection, sql, binds, System.nanoTime() - start, name.equals("executeBatch"));
+                }
+            }
+        }
+
+        private Object invokeTarget(Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+        }
+    }
+}
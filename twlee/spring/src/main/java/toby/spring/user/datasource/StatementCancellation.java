@@ -0,0 +1,74 @@
+package toby.spring.user.datasource;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 한 작업이 실행되는 동안 CancellableDataSource 로 만든 Statement 를 모아 두었다가
+ * cancel() 이 호출되면 Statement.cancel() 로 DB 에서 실행 중인 쿼리를 멈춘다.
+ * 작업을 실행하는 스레드에 ThreadLocal 로 바인딩된다.
+ */
+public class StatementCancellation {
+    private static final ThreadLocal<StatementCancellation> CURRENT = new ThreadLocal<>();
+
+    private final Set<Statement> statements = ConcurrentHashMap.newKeySet();
+    private volatile boolean cancelled;
+
+    public static StatementCancellation current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * 현재 스레드에 이 범위를 바인딩한 채로 작업을 실행한다.
+     */
+    public <T> T call(Callable<T> task) throws Exception {
+        StatementCancellation previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            return task.call();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+            statements.clear();
+        }
+    }
+
+    void register(Statement statement) throws SQLException {
+        // 취소된 뒤에 만든 Statement 는 실행되기 전이라 cancel() 이 통하지 않으므로 바로 실패시킨다
+        if (cancelled) {
+            statement.close();
+        }
+        checkNotCancelled();
+        statements.add(statement);
+    }
+
+    /**
+     * Statement 를 실행하기 직전에 호출한다.
+     * 등록은 됐지만 아직 실행 전인 Statement 는 cancel() 을 무시하는 드라이버(H2)가 있어서 여기서 한 번 더 막는다.
+     */
+    void checkNotCancelled() throws SQLException {
+        if (cancelled) {
+            throw new SQLException("이미 취소된 작업입니다");
+        }
+    }
+
+    public void cancel() {
+        cancelled = true;
+        for (Statement statement : statements) {
+            try {
+                statement.cancel();
+            } catch (SQLException e) {
+            }
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+}
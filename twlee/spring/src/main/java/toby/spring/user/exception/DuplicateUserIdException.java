@@ -1,7 +1,24 @@
 package toby.spring.user.exception;
 
+import java.util.Collections;
+import java.util.List;
+
 public class DuplicateUserIdException extends RuntimeException {
+    private final List<String> duplicateIds;
+
     public DuplicateUserIdException(Throwable cause) {
-        super(cause);
+        this(cause, Collections.emptyList());
+    }
+
+    public DuplicateUserIdException(Throwable cause, List<String> duplicateIds) {
+        super(duplicateIds.isEmpty() ? (cause == null ? null : cause.toString()) : "중복된 아이디: " + duplicateIds, cause);
+        this.duplicateIds = Collections.unmodifiableList(duplicateIds);
+    }
+
+    /**
+     * 일괄 등록에서 중복으로 들어가지 못한 아이디들. 단건 등록이면 비어 있다.
+     */
+    public List<String> getDuplicateIds() {
+        return duplicateIds;
     }
 }
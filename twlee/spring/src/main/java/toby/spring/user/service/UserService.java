@@ -9,6 +9,7 @@ import java.util.List;
 public interface UserService {
     void add(User user);
     void upgradeLevels();
+    void upgradeLevelsInBulk();
     @Transactional(readOnly = true)
     User get(String id);
     @Transactional(readOnly = true)
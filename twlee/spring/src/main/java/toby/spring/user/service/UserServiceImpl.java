@@ -8,6 +8,7 @@ import org.springframework.stereotype.Component;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.support.DefaultTransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
 import org.springframework.transaction.support.TransactionSynchronizationManager;
 import toby.spring.user.dao.UserDao;
 import toby.spring.user.domain.Level;
@@ -15,30 +16,99 @@ import toby.spring.user.domain.User;
 
 import javax.sql.DataSource;
 import java.sql.Connection;
+import java.util.ArrayList;
 import java.util.List;
 
 @Component
 public class UserServiceImpl implements UserService {
     public static final int MIN_LOGCOUNT_FOR_SILVER = 50;
     public static final int MIN_RECOMMEND_FOR_GOLD = 30;
+    public static final int DEFAULT_UPGRADE_BATCH_SIZE = 100;
 
     private final UserDao userDao;
     private final DataSource dataSource;
     private final MailSender dummyMailSender;
+    private int upgradeBatchSize = DEFAULT_UPGRADE_BATCH_SIZE;
 
     public UserServiceImpl(UserDao userDao, DataSource dataSource, MailSender dummyMailSender) {
+        if (userDao.spansMultipleDatabases()) {
+            throw new IllegalArgumentException("등급 변경 대상을 트랜잭션 안에서 잠글 수 없는 UserDao 입니다: " + userDao.getClass().getSimpleName());
+        }
         this.userDao = userDao;
         this.dataSource = dataSource;
         this.dummyMailSender = dummyMailSender;
     }
 
     public void upgradeLevels() {
-        List<User> users = userDao.getAll();
-        for (User user : users) {
+        upgradeLevelsInBatches();
+    }
+
+    /**
+     * 등급을 올릴 수 있는 사용자만 DB 에서 골라 한 명씩 읽으면서, 등급을 올린 사용자를 모아 두었다가 upgradeBatchSize 건씩 updateLevels 로 한 번에 수정한다.
+     * 대상은 필요한 컬럼만 읽고, 수정도 level 컬럼만 한다. 안내 메일은 트랜잭션이 커밋된 뒤에 보내고, 트랜잭션 밖이면 묶음을 반영한 직후에 보낸다.
+     * 전체 목록을 메모리에 올리지 않으므로 테이블이 커져도 힙 사용량이 일정하다.
+     * 호출한 쪽의 트랜잭션 안에서 실행되므로 중간에 실패하면 앞서 수정한 묶음도 함께 롤백되고 메일도 보내지 않는다.
+     * 단 ShardedUserDao 는 샤드별 실행 스레드에서 auto-commit 으로 수정하므로 이 트랜잭션에 묶이지 않는다.
+     */
+    private void upgradeLevelsInBatches() {
+        List<User> upgraded = new ArrayList<>();
+        userDao.findUpgradeCandidates(MIN_LOGCOUNT_FOR_SILVER, MIN_RECOMMEND_FOR_GOLD, user -> {
             if (canUpgradeLevel(user)) {
                 upgradeLevel(user);
+                upgraded.add(user);
+                if (upgraded.size() >= upgradeBatchSize) {
+                    flushUpgraded(upgraded);
+                }
+            }
+        });
+        if (!upgraded.isEmpty()) {
+            flushUpgraded(upgraded);
+        }
+    }
+
+    private void flushUpgraded(List<User> upgraded) {
+        List<User> flushed = new ArrayList<>(upgraded);
+        userDao.updateLevels(flushed);
+        sendUpgradeMailsAfterCommit(flushed);
+        upgraded.clear();
+    }
+
+    /**
+     * 대상을 select ... for update 로 잠그면서 읽고, 잠근 사용자만 id 목록으로 한꺼번에 다음 등급으로 올린다.
+     * 잠근 행만 바꾸므로 바뀐 행 수는 읽은 수와 같아야 한다. 어긋나면 잠금이 없었다는 뜻이므로 예외를 던져 롤백한다.
+     * 등급 변경은 upgradeLevel 을 거치고, 안내 메일은 트랜잭션이 커밋된 뒤에 보낸다.
+     * 잠금이 유지되도록 호출한 쪽의 트랜잭션 안에서 실행해야 한다.
+     */
+    @Override
+    public void upgradeLevelsInBulk() {
+        List<User> candidates = new ArrayList<>();
+        userDao.lockUpgradeCandidates(MIN_LOGCOUNT_FOR_SILVER, MIN_RECOMMEND_FOR_GOLD, user -> {
+            if (canUpgradeLevel(user)) {
+                candidates.add(user);
             }
+        });
+        int updated = userDao.upgradeLevels(candidates);
+        if (updated != candidates.size()) {
+            throw new IllegalStateException("잠근 대상과 변경 건수가 다릅니다: 조회 " + candidates.size() + "건, 변경 " + updated + "건");
         }
+        for (User user : candidates) {
+            upgradeLevel(user);
+        }
+        sendUpgradeMailsAfterCommit(candidates);
+    }
+
+    // 트랜잭션 밖이면 바로 보낸다
+    private void sendUpgradeMailsAfterCommit(List<User> users) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            users.forEach(this::sendUpgradeMail);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                users.forEach(UserServiceImpl.this::sendUpgradeMail);
+            }
+        });
     }
 
     @Override
@@ -67,12 +137,7 @@ public class UserServiceImpl implements UserService {
         c.setAutoCommit(false);
 
         try {
-            List<User> users = userDao.getAll();
-            for (User user : users) {
-                if (canUpgradeLevel(user)) {
-                    upgradeLevel(user);
-                }
-            }
+            upgradeLevelsInBatches();
         } catch (Exception e) {
             c.rollback();
             throw e;
@@ -88,12 +153,7 @@ public class UserServiceImpl implements UserService {
         TransactionStatus status = txm.getTransaction(new DefaultTransactionDefinition());
 
         try {
-            List<User> users = userDao.getAll();
-            for (User user : users) {
-                if (canUpgradeLevel(user)) {
-                    upgradeLevel(user);
-                }
-            }
+            upgradeLevelsInBatches();
             txm.commit(status);
         } catch (Exception e) {
             txm.rollback(status);
@@ -103,8 +163,6 @@ public class UserServiceImpl implements UserService {
 
     protected void upgradeLevel(User user) {
         user.upgradeLevel();
-        userDao.update(user);
-        sendUpgradeMail(user);
     }
 
     private void sendUpgradeMail(User user) {
@@ -137,4 +195,8 @@ public class UserServiceImpl implements UserService {
         }
         userDao.add(user);
     }
+
+    public void setUpgradeBatchSize(int upgradeBatchSize) {
+        this.upgradeBatchSize = upgradeBatchSize;
+    }
 }
@@ -33,6 +33,18 @@ public class UserServiceTx implements UserService {
         }
     }
 
+    @Override
+    public void upgradeLevelsInBulk() {
+        TransactionStatus status = transactionManager.getTransaction(new DefaultTransactionDefinition());
+        try {
+            userService.upgradeLevelsInBulk();
+            transactionManager.commit(status);
+        } catch (Exception e) {
+            transactionManager.rollback(status);
+            throw e;
+        }
+    }
+
     @Override
     public User get(String id) {
         return null;
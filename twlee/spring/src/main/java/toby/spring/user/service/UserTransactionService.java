@@ -1,5 +1,7 @@
 package toby.spring.user.service;
 
+import org.springframework.mail.MailSender;
+import org.springframework.mail.SimpleMailMessage;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.TransactionStatus;
@@ -8,27 +10,78 @@ import toby.spring.user.dao.UserDao;
 import toby.spring.user.domain.Level;
 import toby.spring.user.domain.User;
 
+import java.util.ArrayList;
 import java.util.List;
 
 @Component
 public class UserTransactionService implements UserService {
     public static final int MIN_LOGCOUNT_FOR_SILVER = 50;
     public static final int MIN_RECOMMEND_FOR_GOLD = 30;
+    public static final int DEFAULT_UPGRADE_BATCH_SIZE = 100;
 
     private final UserDao userDao;
     private final PlatformTransactionManager transactionManager;
+    private final MailSender mailSender;
+    private int upgradeBatchSize = DEFAULT_UPGRADE_BATCH_SIZE;
 
-    public UserTransactionService(UserDao userDao, PlatformTransactionManager transactionManager) {
+    public UserTransactionService(UserDao userDao, PlatformTransactionManager transactionManager, MailSender mailSender) {
+        if (userDao.spansMultipleDatabases()) {
+            throw new IllegalArgumentException("등급 변경 대상을 트랜잭션 안에서 잠글 수 없는 UserDao 입니다: " + userDao.getClass().getSimpleName());
+        }
         this.userDao = userDao;
         this.transactionManager = transactionManager;
+        this.mailSender = mailSender;
     }
 
     public void upgradeLevels() {
-        List<User> users = userDao.getAll();
-        for (User user : users) {
+        upgradeLevelsInternal();
+    }
+
+    // 대상 사용자만 한 명씩 읽고, 등급을 올린 사용자는 upgradeBatchSize 건씩 모아서 수정한다
+    private void upgradeLevelsInternal() {
+        List<User> upgraded = new ArrayList<>();
+        userDao.findUpgradeCandidates(MIN_LOGCOUNT_FOR_SILVER, MIN_RECOMMEND_FOR_GOLD, user -> {
             if (canUpgradeLevel(user)) {
                 upgradeLevel(user);
+                upgraded.add(user);
+                if (upgraded.size() >= upgradeBatchSize) {
+                    userDao.updateLevels(new ArrayList<>(upgraded));
+                    upgraded.clear();
+                }
             }
+        });
+        if (!upgraded.isEmpty()) {
+            userDao.updateLevels(upgraded);
+        }
+    }
+
+    /**
+     * UserServiceImpl.upgradeLevelsInBulk 와 같다. 대상을 잠그고 id 목록으로 한꺼번에 올린 뒤, 커밋하고 나서 메일을 보낸다.
+     */
+    @Override
+    public void upgradeLevelsInBulk() {
+        List<User> candidates = new ArrayList<>();
+        TransactionStatus status = transactionManager.getTransaction(new DefaultTransactionDefinition());
+        try {
+            userDao.lockUpgradeCandidates(MIN_LOGCOUNT_FOR_SILVER, MIN_RECOMMEND_FOR_GOLD, user -> {
+                if (canUpgradeLevel(user)) {
+                    candidates.add(user);
+                }
+            });
+            int updated = userDao.upgradeLevels(candidates);
+            if (updated != candidates.size()) {
+                throw new IllegalStateException("잠근 대상과 변경 건수가 다릅니다: 조회 " + candidates.size() + "건, 변경 " + updated + "건");
+            }
+            for (User user : candidates) {
+                upgradeLevel(user);
+            }
+            transactionManager.commit(status);
+        } catch (Exception e) {
+            transactionManager.rollback(status);
+            throw e;
+        }
+        for (User user : candidates) {
+            sendUpgradeMail(user);
         }
     }
 
@@ -64,18 +117,18 @@ public class UserTransactionService implements UserService {
         }
     }
 
-    private void upgradeLevelsInternal() {
-        List<User> users = userDao.getAll();
-        for (User user : users) {
-            if (canUpgradeLevel(user)) {
-                upgradeLevel(user);
-            }
-        }
-    }
-
     protected void upgradeLevel(User user) {
         user.upgradeLevel();
-        userDao.update(user);
+    }
+
+    private void sendUpgradeMail(User user) {
+        SimpleMailMessage simpleMailMessage = new SimpleMailMessage();
+        simpleMailMessage.setTo(user.getEmail());
+        simpleMailMessage.setFrom("admin");
+        simpleMailMessage.setSubject("Upgrade 안내");
+        simpleMailMessage.setText("사용자님의 등급이 " + user.getLevel().name());
+
+        mailSender.send(simpleMailMessage);
     }
 
     private boolean canUpgradeLevel(User user) {
@@ -98,4 +151,8 @@ public class UserTransactionService implements UserService {
         }
         userDao.add(user);
     }
+
+    public void setUpgradeBatchSize(int upgradeBatchSize) {
+        this.upgradeBatchSize = upgradeBatchSize;
+    }
 }
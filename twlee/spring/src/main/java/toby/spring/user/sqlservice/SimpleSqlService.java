@@ -5,17 +5,27 @@ import toby.spring.user.exception.SqlRetrievalFailureException;
 import java.util.Map;
 import java.util.Objects;
 
+import static java.util.Map.entry;
+
 public class SimpleSqlService implements SqlService {
     private final Map<String, String> sqlMap;
 
     public SimpleSqlService() {
-        sqlMap = Map.of(
-                "userAdd", "insert into users (id, name, password, level, login, recommend, email) values (?, ?, ?, ?, ?, ?, ?)",
-                "userGet", "select * from users where id = ?",
-                "userGetAll", "select * from users order by id",
-                "userDeleteAll", "delete from users",
-                "userGetCount", "select count(*) from users",
-                "userUpdate", "update users set name = ?, password = ?, level = ?, login = ?, recommend = ?, email = ? where id = ?"
+        sqlMap = Map.ofEntries(
+                entry("userAdd", "insert into users (id, name, password, level, login, recommend, email) values (?, ?, ?, ?, ?, ?, ?)"),
+                entry("userGet", "select * from users where id = ?"),
+                entry("userGetAll", "select * from users order by id"),
+                entry("userGetFirstPage", "select * from users order by id limit ?"),
+                entry("userGetPageAfter", "select * from users where id > ? order by id limit ?"),
+                entry("userGetUpgradeCandidates", "select id, level, login, recommend, email from users where level = ? and login >= ? union all select id, level, login, recommend, email from users where level = ? and recommend >= ? order by id"),
+                entry("userLockUpgradeCandidates", "select id, level, login, recommend, email from users where (level = ? and login >= ?) or (level = ? and recommend >= ?) order by id for update"),
+                entry("userDeleteAll", "delete from users"),
+                entry("userGetCount", "select count(*) from users"),
+                entry("userGetCountByLevel", "select level, count(*) from users group by level"),
+                entry("userUpdateLevel", "update users set level = ? where id = ?"),
+                entry("userUpgradeLevels", "update users set level = ? where level = ? and id in (?)"),
+                entry("userGetLevelsForUpdate", "select id, level from users where id in (?) for update"),
+                entry("userUpdate", "update users set name = ?, password = ?, level = ?, login = ?, recommend = ?, email = ? where id = ?")
         );
     }
 
@@ -11,9 +11,13 @@ alter table users add login integer not null default 0 ;
 alter table users add recommend integer not null default 0 ;
 alter table users add email varchar(30) not null ;
 
+-- 등급 올리기 대상 조회(level = ? and login >= ? / level = ? and recommend >= ?)용
+create index idx_users_level_login on users (level, login);
+create index idx_users_level_recommend on users (level, recommend);
+
 drop table if exists sqlmap;
 
 create table sqlmap (
     key_ varchar(100) primary key,
-    sql_ varchar(100) not null
+    sql_ varchar(1000) not null
 );
@@ -1,22 +1,43 @@
 package toby.spring.user.config;
 
+import org.springframework.aop.Advisor;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.aop.support.NameMatchMethodPointcut;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.*;
 import org.springframework.context.support.PropertySourcesPlaceholderConfigurer;
 import org.springframework.core.env.Environment;
+import org.springframework.core.io.ClassPathResource;
 import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
 import org.springframework.jdbc.datasource.SimpleDriverDataSource;
+import org.springframework.jdbc.datasource.init.DatabasePopulatorUtils;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.mail.MailSender;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
+import org.springframework.util.StringUtils;
+import toby.spring.user.aop.advice.DeadlineAdvice;
+import toby.spring.user.dao.CountedUserDao;
+import toby.spring.user.dao.H2Mode;
+import toby.spring.user.dao.PoolingConnectionMaker;
 import toby.spring.user.dao.UserDao;
 import toby.spring.user.dao.UserSqlServiceDao;
+import toby.spring.user.datasource.AdmissionControlDataSource;
+import toby.spring.user.datasource.LeakDetectingDataSource;
+import toby.spring.user.datasource.PoolingDataSource;
+import toby.spring.user.datasource.ReadWriteRoutingDataSource;
+import toby.spring.user.datasource.SqlMonitoringDataSource;
 import toby.spring.user.service.UserService;
 import toby.spring.user.service.UserTransactionService;
 import toby.spring.user.sqlservice.SqlService;
 
 import javax.sql.DataSource;
 import java.sql.Driver;
+import java.util.ArrayList;
+import java.util.List;
 
 @Configuration
 @EnableTransactionManagement
@@ -30,11 +51,17 @@ public class AppContext {
     @Autowired
     private Environment env;
 
+    @Autowired
+    private MailSender mailSender;
+
     @Value("${db.driverClass}")
     private Class<? extends Driver> driverClass;
 
-    @Value("${db.url}")
-    private String url;
+    @Value("${db.mode:tcp}")
+    private String mode;
+
+    @Value("${db.name:test}")
+    private String name;
 
     @Value("${db.username}")
     private String username;
@@ -42,8 +69,124 @@ public class AppContext {
     @Value("${db.password}")
     private String password;
 
+    @Value("${db.replica.urls:}")
+    private String replicaUrls;
+
+    @Value("${db.pool.maxSize:10}")
+    private int poolMaxSize;
+
+    @Value("${db.pool.minIdle:0}")
+    private int poolMinIdle;
+
+    @Value("${db.pool.statementCacheSize:0}")
+    private int poolStatementCacheSize;
+
+    @Value("${db.admission.maxConcurrency:0}")
+    private int admissionMaxConcurrency;
+
+    @Value("${db.admission.maxQueueSize:100}")
+    private int admissionMaxQueueSize;
+
+    @Value("${db.admission.queueTimeoutMillis:1000}")
+    private long admissionQueueTimeoutMillis;
+
+    @Value("${db.leak.thresholdMillis:0}")
+    private long leakThresholdMillis;
+
+    @Value("${db.leak.reclaim:false}")
+    private boolean leakReclaim;
+
+    @Value("${db.monitor.enabled:false}")
+    private boolean monitorEnabled;
+
+    @Value("${db.monitor.slowQueryMillis:100}")
+    private long monitorSlowQueryMillis;
+
+    @Value("${db.userCount.reconcileMillis:0}")
+    private long userCountReconcileMillis;
+
+    @Value("${db.deadline.serviceMillis:0}")
+    private long serviceDeadlineMillis;
+
     @Bean
     public DataSource dataSource() {
+        DataSource dataSource = leakDetecting(monitored(routingDataSource()));
+        if (admissionMaxConcurrency <= 0) {
+            return dataSource;
+        }
+        AdmissionControlDataSource admissionControl =
+                new AdmissionControlDataSource(dataSource, admissionMaxConcurrency, admissionMaxQueueSize);
+        admissionControl.setQueueTimeoutMillis(admissionQueueTimeoutMillis);
+        return admissionControl;
+    }
+
+    private DataSource leakDetecting(DataSource dataSource) {
+        if (leakThresholdMillis <= 0) {
+            return dataSource;
+        }
+        LeakDetectingDataSource leakDetecting = new LeakDetectingDataSource(dataSource);
+        leakDetecting.setLeakThresholdMillis(leakThresholdMillis);
+        leakDetecting.setReclaimLeakedConnections(leakReclaim);
+        leakDetecting.startLeakDetection(leakThresholdMillis);
+        return leakDetecting;
+    }
+
+    private DataSource monitored(DataSource dataSource) {
+        if (!monitorEnabled) {
+            return dataSource;
+        }
+        SqlMonitoringDataSource monitoring = new SqlMonitoringDataSource(dataSource);
+        monitoring.setSlowQueryThresholdMillis(monitorSlowQueryMillis);
+        return monitoring;
+    }
+
+    private DataSource routingDataSource() {
+        List<PoolingDataSource> replicas = replicaPools().getPools();
+        if (replicas.isEmpty()) {
+            return initialized(primaryPool());
+        }
+        // readOnly 여부는 트랜잭션 시작 후에 정해지므로 실제 커넥션 획득을 첫 쿼리 시점까지 미룬다
+        return new LazyConnectionDataSourceProxy(new ReadWriteRoutingDataSource(initialized(primaryPool()), new ArrayList<>(replicas)));
+    }
+
+    // 풀은 빈으로 등록해서 컨텍스트가 닫힐 때 close() 로 물리 커넥션을 정리한다
+    @Bean
+    public PoolingDataSource primaryPool() {
+        return pooledDataSource(url());
+    }
+
+    @Bean
+    public ReplicaPools replicaPools() {
+        List<PoolingDataSource> pools = new ArrayList<>();
+        for (String replicaUrl : StringUtils.commaDelimitedListToStringArray(replicaUrls)) {
+            pools.add(pooledDataSource(replicaUrl.trim()));
+        }
+        return new ReplicaPools(pools);
+    }
+
+    private String url() {
+        return H2Mode.of(mode).url(name);
+    }
+
+    // 메모리 모드는 매번 빈 DB 로 시작하므로 스키마를 만들어 둔다
+    private DataSource initialized(DataSource dataSource) {
+        if (H2Mode.of(mode) == H2Mode.MEM) {
+            DatabasePopulatorUtils.execute(new ResourceDatabasePopulator(new ClassPathResource("schema.sql")), dataSource);
+        }
+        return dataSource;
+    }
+
+    // 빈 생성 단계에서 예열하므로 컨텍스트가 뜬 시점에는 minIdle 개의 커넥션이 열려 있다
+    private PoolingDataSource pooledDataSource(String url) {
+        DataSource target = simpleDriverDataSource(url);
+        PoolingConnectionMaker pool = new PoolingConnectionMaker(target::getConnection, poolMaxSize);
+        pool.setMinIdle(poolMinIdle);
+        pool.setStatementCacheSize(poolStatementCacheSize);
+        pool.prewarm();
+        return new PoolingDataSource(pool);
+    }
+
+    private DataSource simpleDriverDataSource(String url) {
         SimpleDriverDataSource dataSource = new SimpleDriverDataSource();
         dataSource.setDriverClass(driverClass);
         dataSource.setUrl(url);
@@ -60,7 +203,7 @@ public class AppContext {
         } catch (ClassNotFoundException e) {
             throw new RuntimeException(e);
         }
-        dataSource.setUrl(env.getProperty("db.url"));
+        dataSource.setUrl(H2Mode.of(env.getProperty("db.mode")).url(env.getProperty("db.name")));
         dataSource.setUsername(env.getProperty("db.username"));
         dataSource.setPassword(env.getProperty("db.password"));
         return dataSource;
@@ -78,12 +221,33 @@ public class AppContext {
 
     @Bean
     public UserDao userDao() {
-        return new UserSqlServiceDao(dataSource(), sqlService);
+        UserDao userDao = new UserSqlServiceDao(dataSource(), sqlService);
+        if (userCountReconcileMillis <= 0) {
+            return userDao;
+        }
+        // 다른 DAO 빈도 같은 테이블에 쓰므로 주기적으로 DB 와 건수를 맞춘다
+        CountedUserDao countedUserDao = new CountedUserDao(userDao);
+        countedUserDao.startReconciliation(userCountReconcileMillis);
+        return countedUserDao;
     }
 
     @Bean
     public UserService userService() {
-        return new UserTransactionService(userDao(), transactionManager());
+        UserService userService = new UserTransactionService(userDao(), transactionManager(), mailSender);
+        if (serviceDeadlineMillis <= 0) {
+            return userService;
+        }
+        // 자동 프록시 생성기가 다른 서비스 빈에도 적용하지 않도록 어드바이저를 빈으로 등록하지 않고 직접 붙인다
+        ProxyFactory proxyFactory = new ProxyFactory(userService);
+        proxyFactory.addAdvisor(deadlineAdvisor(serviceDeadlineMillis));
+        return (UserService) proxyFactory.getProxy();
+    }
+
+    // 서비스 메소드 하나가 DB 작업에 쓸 수 있는 시간을 정한다
+    public static Advisor deadlineAdvisor(long timeoutMillis) {
+        NameMatchMethodPointcut pointcut = new NameMatchMethodPointcut();
+        pointcut.setMappedName("*");
+        return new DefaultPointcutAdvisor(pointcut, new DeadlineAdvice(timeoutMillis));
     }
 
     @Bean
@@ -95,4 +259,24 @@ public class AppContext {
     public static PropertySourcesPlaceholderConfigurer placeholderConfigurer() {
         return new PropertySourcesPlaceholderConfigurer();
     }
+
+    /**
+     * 레플리카 풀 목록. 개수가 설정에 따라 달라서 하나의 빈으로 묶고, 컨텍스트가 닫힐 때 모두 닫는다.
+     */
+    public static class ReplicaPools implements AutoCloseable {
+        private final List<PoolingDataSource> pools;
+
+        public ReplicaPools(List<PoolingDataSource> pools) {
+            this.pools = pools;
+        }
+
+        public List<PoolingDataSource> getPools() {
+            return pools;
+        }
+
+        @Override
+        public void close() {
+            pools.forEach(PoolingDataSource::close);
+        }
+    }
 }
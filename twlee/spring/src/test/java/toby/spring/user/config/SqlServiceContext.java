@@ -8,6 +8,7 @@ import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
 import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
 import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
 import org.springframework.oxm.jaxb.Jaxb2Marshaller;
+import toby.spring.user.dao.DeadlineAwareJdbcTemplate;
 import toby.spring.user.sqlservice.OxmSqlV5Service;
 import toby.spring.user.sqlservice.SqlMapConfig;
 import toby.spring.user.sqlservice.SqlRegistry;
@@ -44,6 +45,6 @@ public class SqlServiceContext {
                 .setType(EmbeddedDatabaseType.H2)
                 .addScript("schema.sql")
                 .build();
-        return new JdbcTemplate(db);
+        return new DeadlineAwareJdbcTemplate(db);
     }
 }
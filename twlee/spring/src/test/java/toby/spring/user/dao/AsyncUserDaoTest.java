@@ -0,0 +1,144 @@
+package toby.spring.user.dao;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import toby.spring.user.datasource.CancellableDataSource;
+import toby.spring.user.domain.Level;
+import toby.spring.user.domain.User;
+import toby.spring.user.sqlservice.SimpleSqlService;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class AsyncUserDaoTest {
+    private static final String LONG_RUNNING_QUERY = "select sum(x) as long_running_sum from system_range(1, 100000000000)";
+
+    private EmbeddedDatabase db;
+    private DataSource dataSource;
+    private AsyncDaoExecutor executor;
+    private AsyncUserDao asyncUserDao;
+
+    @BeforeEach
+    void setUp() {
+        db = new EmbeddedDatabaseBuilder()
+                .generateUniqueName(true)
+                .setType(EmbeddedDatabaseType.H2)
+                .addScript("schema.sql")
+                .build();
+        dataSource = new CancellableDataSource(db);
+        executor = new AsyncDaoExecutor(4);
+        asyncUserDao = new AsyncUserDao(new UserSqlServiceDao(dataSource, new SimpleSqlService()), executor);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.close();
+        db.shutdown();
+    }
+
+    @Test
+    void fanOut() {
+        CompletableFuture.allOf(
+                asyncUserDao.add(new User("1", "name1", "pw", Level.BASIC, 0, 0, "1@email.co.kr")),
+                asyncUserDao.add(new User("2", "name2", "pw", Level.BASIC, 0, 0, "2@email.co.kr"))
+        ).join();
+
+        CompletableFuture<Integer> count = asyncUserDao.getCount();
+        CompletableFuture<List<User>> users = asyncUserDao.getAll();
+
+        assertEquals(2, count.join());
+        assertEquals(2, users.join().size());
+    }
+
+    @Test
+    @Timeout(30)
+    void cancelStopsRunningStatement() throws InterruptedException {
+        // 취소가 통하지 않더라도 쿼리 타임아웃으로 끝나게 해 둔다
+        CompletableFuture<Integer> future = asyncJdbcContext().query(LONG_RUNNING_QUERY, ps -> ps.setQueryTimeout(20), rs -> true);
+
+        // 다른 세션에서 쿼리가 DB 에서 실행 중인 것을 확인한 뒤에 취소한다
+        JdbcTemplate monitor = new JdbcTemplate(db);
+        while (monitor.queryForObject("select count(*) from information_schema.sessions where lower(statement) like ?",
+                Integer.class, "%long_running_sum%") == 0) {
+            Thread.sleep(10);
+        }
+        future.cancel(true);
+
+        awaitIdle();
+        assertThat(future.isCancelled()).isTrue();
+        assertEquals(0, executor.getActiveCount());
+    }
+
+    @Test
+    @Timeout(30)
+    void cancelBeforeExecutionSkipsStatement() throws InterruptedException {
+        CountDownLatch prepared = new CountDownLatch(1);
+        CountDownLatch cancelled = new CountDownLatch(1);
+        // Statement 가 등록된 뒤 execute 전에 취소한다
+        CompletableFuture<Integer> future = asyncJdbcContext().query(LONG_RUNNING_QUERY, ps -> {
+            ps.setQueryTimeout(20);
+            prepared.countDown();
+            try {
+                cancelled.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, rs -> true);
+
+        assertThat(prepared.await(5, TimeUnit.SECONDS)).isTrue();
+        future.cancel(true);
+        cancelled.countDown();
+
+        awaitIdle();
+        assertThat(future.isCancelled()).isTrue();
+        assertEquals(0, executor.getActiveCount());
+    }
+
+    @Test
+    void maxConcurrencyLimitsRunningTasks() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            futures.add(executor.submit(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                release.await();
+                running.decrementAndGet();
+                return null;
+            }));
+        }
+
+        assertEquals(4, executor.getActiveCount());
+        release.countDown();
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        assertThat(maxRunning.get()).isLessThanOrEqualTo(4);
+    }
+
+    private AsyncJdbcContext asyncJdbcContext() {
+        JdbcContext jdbcContext = new JdbcContext();
+        jdbcContext.setDataSource(dataSource);
+        return new AsyncJdbcContext(jdbcContext, executor);
+    }
+
+    private void awaitIdle() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (executor.getActiveCount() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+}
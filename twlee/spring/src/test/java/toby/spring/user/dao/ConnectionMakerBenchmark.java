@@ -0,0 +1,32 @@
+package toby.spring.user.dao;
+
+import java.sql.SQLException;
+
+/**
+ * DConnectionMaker 와 PoolingConnectionMaker 의 호출당 지연시간 비교.
+ * H2 TCP 서버(jdbc:h2:tcp://localhost/~/test)가 떠 있어야 한다.
+ */
+class ConnectionMakerBenchmark {
+    private static final int WARMUP = 200;
+    private static final int ITERATIONS = 2_000;
+
+    public static void main(String[] args) throws SQLException, ClassNotFoundException {
+        measure("DConnectionMaker", new UserStupidDao(new DConnectionMaker()));
+
+        try (PoolingConnectionMaker pooling = new PoolingConnectionMaker(new DConnectionMaker())) {
+            measure("PoolingConnectionMaker", new UserStupidDao(pooling));
+        }
+    }
+
+    private static void measure(String name, UserStupidDao userDao) throws SQLException, ClassNotFoundException {
+        for (int i = 0; i < WARMUP; i++) {
+            userDao.getCount();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            userDao.getCount();
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("%-24s %8.1f us/getCount%n", name, elapsed / 1_000.0 / ITERATIONS);
+    }
+}
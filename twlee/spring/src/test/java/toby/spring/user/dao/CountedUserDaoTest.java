@@ -0,0 +1,201 @@
+package toby.spring.user.dao;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.transaction.support.TransactionTemplate;
+import toby.spring.user.domain.Level;
+import toby.spring.user.domain.User;
+import toby.spring.user.exception.DuplicateUserIdException;
+import toby.spring.user.sqlservice.SimpleSqlService;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static toby.spring.user.service.UserServiceImpl.MIN_LOGCOUNT_FOR_SILVER;
+import static toby.spring.user.service.UserServiceImpl.MIN_RECOMMEND_FOR_GOLD;
+
+class CountedUserDaoTest {
+    private EmbeddedDatabase db;
+    private CountedUserDao userDao;
+
+    @BeforeEach
+    void setUp() {
+        db = new EmbeddedDatabaseBuilder()
+                .generateUniqueName(true)
+                .setType(EmbeddedDatabaseType.H2)
+                .addScript("schema.sql")
+                .build();
+        userDao = new CountedUserDao(new UserSqlServiceDao(db, new SimpleSqlService()));
+    }
+
+    @AfterEach
+    void tearDown() {
+        userDao.close();
+        db.shutdown();
+    }
+
+    @Test
+    void countsFollowWrites() {
+        userDao.add(user("count1", Level.BASIC));
+        userDao.addAll(Arrays.asList(user("count2", Level.SILVER), user("count3", Level.GOLD)));
+        assertEquals(3, userDao.getCount());
+        assertEquals(1, userDao.getCountByLevel().get(Level.SILVER));
+
+        User user = user("count1", Level.GOLD);
+        userDao.update(user);
+        assertEquals(0, userDao.getCountByLevel().get(Level.BASIC));
+        assertEquals(2, userDao.getCountByLevel().get(Level.GOLD));
+
+        userDao.deleteAll();
+        assertEquals(0, userDao.getCount());
+    }
+
+    @Test
+    void addAllCountsOnlyInsertedUsers() {
+        userDao.add(user("count1", Level.BASIC));
+
+        assertThatThrownBy(() -> userDao.addAll(Arrays.asList(user("count1", Level.BASIC), user("count2", Level.BASIC))))
+                .isInstanceOf(DuplicateUserIdException.class);
+        assertEquals(2, userDao.getCountByLevel().get(Level.BASIC));
+    }
+
+    @Test
+    void updatesMoveCountsWithoutRecount() {
+        userDao.addAll(Arrays.asList(user("count1", Level.BASIC), user("count2", Level.BASIC), user("count3", Level.SILVER)));
+        assertEquals(3, userDao.getCount());
+        insertOutside("count9", Level.GOLD);
+
+        userDao.update(user("count1", Level.SILVER));
+        userDao.updateLevels(Arrays.asList(user("count2", Level.SILVER), user("count3", Level.GOLD), user("none", Level.GOLD)));
+        userDao.updateAll(Collections.singletonList(user("count2", Level.SILVER)));
+
+        // 다시 셌다면 바깥에서 넣은 count9 까지 세었을 것이다
+        assertThat(userDao.getCountByLevel())
+                .containsEntry(Level.BASIC, 0).containsEntry(Level.SILVER, 2).containsEntry(Level.GOLD, 1);
+    }
+
+    @Test
+    void rolledBackUpdateDoesNotMoveCounts() {
+        userDao.add(user("count1", Level.BASIC));
+        assertEquals(1, userDao.getCount());
+
+        TransactionTemplate transaction = new TransactionTemplate(new DataSourceTransactionManager(db));
+        assertThatThrownBy(() -> transaction.executeWithoutResult(status -> {
+            userDao.update(user("count1", Level.GOLD));
+            throw new IllegalStateException("rollback");
+        })).isInstanceOf(IllegalStateException.class);
+        assertThat(userDao.getCountByLevel()).containsEntry(Level.BASIC, 1).containsEntry(Level.GOLD, 0);
+
+        transaction.executeWithoutResult(status -> userDao.update(user("count1", Level.GOLD)));
+        assertThat(userDao.getCountByLevel()).containsEntry(Level.BASIC, 0).containsEntry(Level.GOLD, 1);
+    }
+
+    @Test
+    void bulkUpgradeMovesCountsWithoutRecount() {
+        userDao.add(new User("count1", "카운트1", "p1", Level.BASIC, MIN_LOGCOUNT_FOR_SILVER, 0, "count1@email.co.kr"));
+        userDao.add(new User("count2", "카운트2", "p2", Level.SILVER, 0, MIN_RECOMMEND_FOR_GOLD, "count2@email.co.kr"));
+        assertEquals(2, userDao.getCount());
+        insertOutside("count9", Level.GOLD);
+
+        List<User> candidates = new ArrayList<>();
+        userDao.findUpgradeCandidates(MIN_LOGCOUNT_FOR_SILVER, MIN_RECOMMEND_FOR_GOLD, candidates::add);
+        assertEquals(2, userDao.upgradeLevels(candidates));
+
+        assertThat(userDao.getCountByLevel())
+                .containsEntry(Level.BASIC, 0).containsEntry(Level.SILVER, 1).containsEntry(Level.GOLD, 1);
+    }
+
+    @Test
+    void bulkUpgradeRecountsFromDatabase() {
+        userDao.add(new User("count1", "카운트1", "p1", Level.BASIC, MIN_LOGCOUNT_FOR_SILVER, 0, "count1@email.co.kr"));
+        userDao.add(new User("count2", "카운트2", "p2", Level.SILVER, 0, MIN_RECOMMEND_FOR_GOLD, "count2@email.co.kr"));
+        assertEquals(2, userDao.getCount());
+
+        List<User> candidates = new ArrayList<>();
+        userDao.findUpgradeCandidates(MIN_LOGCOUNT_FOR_SILVER, MIN_RECOMMEND_FOR_GOLD, candidates::add);
+        // 읽은 뒤 count1 의 등급이 바뀌어서 어느 사용자를 건너뛰었는지 알 수 없다
+        new JdbcTemplate(db).update("update users set level = ? where id = ?", Level.GOLD.intValue(), "count1");
+        assertEquals(1, userDao.upgradeLevels(candidates));
+
+        assertEquals(0, userDao.getCountByLevel().get(Level.BASIC));
+        assertEquals(0, userDao.getCountByLevel().get(Level.SILVER));
+        assertEquals(2, userDao.getCountByLevel().get(Level.GOLD));
+    }
+
+    @Test
+    void rolledBackWritesAreNotCounted() {
+        userDao.add(user("count1", Level.BASIC));
+
+        TransactionTemplate transaction = new TransactionTemplate(new DataSourceTransactionManager(db));
+        assertThatThrownBy(() -> transaction.executeWithoutResult(status -> {
+            userDao.add(user("count2", Level.BASIC));
+            throw new IllegalStateException("rollback");
+        })).isInstanceOf(IllegalStateException.class);
+        assertEquals(1, userDao.getCount());
+
+        transaction.executeWithoutResult(status -> userDao.add(user("count3", Level.GOLD)));
+        assertEquals(2, userDao.getCount());
+    }
+
+    @Test
+    void reconcileCatchesOutsideWrites() {
+        userDao.add(user("count1", Level.BASIC));
+        assertEquals(1, userDao.getCount());
+
+        // 데코레이터를 거치지 않은 쓰기는 reconcile 전까지 보이지 않는다
+        insertOutside("count2", Level.GOLD);
+        assertEquals(1, userDao.getCount());
+
+        userDao.reconcile();
+        assertThat(userDao.getCountByLevel()).containsEntry(Level.BASIC, 1).containsEntry(Level.GOLD, 1);
+    }
+
+    @Test
+    void writeDuringReconcileIsNotLost() {
+        AtomicReference<CountedUserDao> counted = new AtomicReference<>();
+        UserDao target = new UserSqlServiceDao(db, new SimpleSqlService()) {
+            @Override
+            public Map<Level, Integer> getCountByLevel() {
+                Map<Level, Integer> actual = super.getCountByLevel();
+                // 센 뒤, 메모리 값을 덮어쓰기 전에 다른 스레드의 쓰기가 커밋된 상황
+                if (actual.get(Level.BASIC) == 1) {
+                    counted.get().add(user("count2", Level.BASIC));
+                }
+                return actual;
+            }
+        };
+        counted.set(new CountedUserDao(target));
+        try {
+            counted.get().add(user("count1", Level.BASIC));
+
+            counted.get().reconcile();
+
+            assertEquals(2, counted.get().getCount());
+            assertEquals(2, counted.get().getCountByLevel().get(Level.BASIC));
+        } finally {
+            counted.get().close();
+        }
+    }
+
+    private void insertOutside(String id, Level level) {
+        new JdbcTemplate(db).update("insert into users (id, name, password, level, login, recommend, email) values (?, ?, ?, ?, ?, ?, ?)",
+                id, "카운트", "p", level.intValue(), 0, 0, id + "@email.co.kr");
+    }
+
+    private User user(String id, Level level) {
+        return new User(id, "카운트", "p", level, 0, 0, id + "@email.co.kr");
+    }
+}
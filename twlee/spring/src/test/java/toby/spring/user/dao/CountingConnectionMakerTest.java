@@ -0,0 +1,60 @@
+package toby.spring.user.dao;
+
+import org.junit.jupiter.api.Test;
+import toby.spring.user.datasource.ConnectionMetrics;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CountingConnectionMakerTest {
+
+    @Test
+    void countConcurrently() throws InterruptedException {
+        CountingConnectionMaker connectionMaker = new CountingConnectionMaker(
+                () -> DriverManager.getConnection("jdbc:h2:mem:counting;DB_CLOSE_DELAY=-1", "sa", ""));
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < 400; i++) {
+            executor.execute(() -> {
+                try (Connection conn = connectionMaker.makeConnection()) {
+                    conn.isValid(1);
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        ConnectionMetrics.Snapshot metrics = connectionMaker.getMetrics();
+        assertEquals(400, connectionMaker.getCount());
+        assertEquals(400, metrics.getAcquireLatency().getCount());
+        assertEquals(400, metrics.getHoldTime().getCount());
+        assertEquals(0, metrics.getOpenConnections());
+    }
+
+    @Test
+    void openGauge() throws Exception {
+        CountingConnectionMaker connectionMaker = new CountingConnectionMaker(
+                () -> DriverManager.getConnection("jdbc:h2:mem:counting;DB_CLOSE_DELAY=-1", "sa", ""));
+
+        Connection conn1 = connectionMaker.makeConnection();
+        Connection conn2 = connectionMaker.makeConnection();
+        assertEquals(2, connectionMaker.getMetrics().getOpenConnections());
+
+        conn1.close();
+        conn1.close();
+        assertEquals(1, connectionMaker.getMetrics().getOpenConnections());
+
+        conn2.close();
+        assertEquals(0, connectionMaker.getMetrics().getOpenConnections());
+        assertEquals(2L, connectionMaker.getMetrics().getPeakOpenConnections());
+        assertEquals(2L, connectionMaker.getMetrics().toMap().get("connections.acquired"));
+    }
+}
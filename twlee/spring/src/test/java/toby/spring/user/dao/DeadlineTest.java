@@ -0,0 +1,70 @@
+package toby.spring.user.dao;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.StatementCallback;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import toby.spring.user.sqlservice.SimpleSqlService;
+
+import java.sql.Statement;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class DeadlineTest {
+    private EmbeddedDatabase db;
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        db = new EmbeddedDatabaseBuilder()
+                .generateUniqueName(true)
+                .setType(EmbeddedDatabaseType.H2)
+                .addScript("schema.sql")
+                .build();
+        jdbcTemplate = new DeadlineAwareJdbcTemplate(db);
+    }
+
+    @AfterEach
+    void tearDown() {
+        db.shutdown();
+    }
+
+    @Test
+    void remainingBudgetBecomesQueryTimeout() {
+        assertEquals(0, queryTimeout());
+
+        try (Deadline.Scope ignored = Deadline.start(4_500)) {
+            assertEquals(5, queryTimeout());
+
+            // 안쪽 범위가 더 길어도 바깥 마감을 넘지 않는다
+            try (Deadline.Scope inner = Deadline.start(60_000)) {
+                assertEquals(5, queryTimeout());
+            }
+        }
+        assertThat(Deadline.isActive()).isFalse();
+    }
+
+    @Test
+    void failFastWhenExhausted() {
+        UserDao userDao = new UserSqlServiceDao(db, new SimpleSqlService());
+        JdbcContext jdbcContext = new JdbcContext();
+        jdbcContext.setDataSource(db);
+
+        try (Deadline.Scope ignored = Deadline.start(0)) {
+            assertThatThrownBy(userDao::getCount).isInstanceOf(QueryTimeoutException.class);
+            assertThatThrownBy(() -> jdbcContext.executeSql("delete from users")).isInstanceOf(QueryTimeoutException.class);
+        }
+        assertEquals(0, userDao.getCount());
+    }
+
+    private int queryTimeout() {
+        return jdbcTemplate.execute((StatementCallback<Integer>) Statement::getQueryTimeout);
+    }
+}
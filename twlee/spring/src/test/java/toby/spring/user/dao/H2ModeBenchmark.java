@@ -0,0 +1,81 @@
+package toby.spring.user.dao;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.datasource.init.DatabasePopulatorUtils;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import toby.spring.user.datasource.LatencyHistogram;
+import toby.spring.user.datasource.PoolingDataSource;
+import toby.spring.user.domain.Level;
+import toby.spring.user.domain.User;
+import toby.spring.user.sqlservice.SimpleSqlService;
+
+import java.util.function.IntConsumer;
+
+/**
+ * H2 접속 방식별로 UserDao 단건 작업의 지연시간(평균/p99)과 단일 스레드 처리량을 비교한다.
+ * 인자로 모드 목록을 줄 수 있다. ex) mem file tcp
+ * TCP 모드는 H2 서버가 떠 있어야 하고, 서버가 ~/test 에 락을 잡고 있으므로 FILE 모드는 ~/userbench 를 쓴다.
+ * 시작할 때 schema.sql 로 테이블을 다시 만든다.
+ */
+class H2ModeBenchmark {
+    private static final int WARMUP = 2_000;
+    private static final int ITERATIONS = 10_000;
+
+    public static void main(String[] args) {
+        String[] modes = args.length == 0 ? new String[]{"mem", "file", "tcp"} : args;
+        H2Settings base = H2Settings.load();
+        for (String mode : modes) {
+            H2Mode h2Mode = H2Mode.of(mode);
+            H2Settings settings = h2Mode == H2Mode.FILE
+                    ? new H2Settings(h2Mode, "userbench", base.getUsername(), base.getPassword())
+                    : base.withMode(h2Mode);
+            try {
+                run(settings);
+            } catch (RuntimeException e) {
+                System.out.printf("%-5s 건너뜀: %s%n", h2Mode, e.getMessage());
+            }
+        }
+    }
+
+    private static void run(H2Settings settings) {
+        try (PoolingDataSource dataSource = new PoolingDataSource(new PoolingConnectionMaker(new DConnectionMaker(settings), 1))) {
+            DatabasePopulatorUtils.execute(new ResourceDatabasePopulator(new ClassPathResource("schema.sql")), dataSource);
+            UserDao userDao = new UserSqlServiceDao(dataSource, new SimpleSqlService());
+
+            measure(settings.getMode(), "add", i -> userDao.add(user(i, 0)));
+            measure(settings.getMode(), "get", i -> userDao.get(id(i)));
+            measure(settings.getMode(), "update", i -> userDao.update(user(i, 1)));
+            measure(settings.getMode(), "getCount", i -> userDao.getCount());
+            userDao.deleteAll();
+        }
+    }
+
+    private static void measure(H2Mode mode, String operation, IntConsumer task) {
+        for (int i = 0; i < WARMUP; i++) {
+            task.accept(i);
+        }
+        LatencyHistogram histogram = new LatencyHistogram();
+        long start = System.nanoTime();
+        for (int i = WARMUP; i < WARMUP + ITERATIONS; i++) {
+            long begin = System.nanoTime();
+            task.accept(i);
+            histogram.record(System.nanoTime() - begin);
+        }
+        long elapsed = System.nanoTime() - start;
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        System.out.printf("%-5s %-9s mean %7.1f us  p99 %7.1f us  %,10.0f ops/s%n",
+                mode, operation,
+                snapshot.getMeanNanos() / 1_000.0,
+                snapshot.getPercentileNanos(99) / 1_000.0,
+                ITERATIONS / (elapsed / 1_000_000_000.0));
+    }
+
+    private static String id(int i) {
+        return "b" + i;
+    }
+
+    private static User user(int i, int login) {
+        return new User(id(i), "bench", "1234", Level.BASIC, login, 0, id(i) + "@email.co.kr");
+    }
+}
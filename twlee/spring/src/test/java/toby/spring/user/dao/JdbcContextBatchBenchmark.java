@@ -0,0 +1,52 @@
+package toby.spring.user.dao;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import toby.spring.user.domain.User;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * AddStatement 로 대량 입력할 때 건마다 실행하는 경우와 workWithBatch 로 묶어서 실행하는 경우 비교.
+ * users 테이블을 새로 만들기 때문에 메모리 모드 H2 에서만 돌린다.
+ */
+class JdbcContextBatchBenchmark {
+    private static final int USERS = 100_000;
+
+    public static void main(String[] args) throws SQLException {
+        SingleConnectionDataSource dataSource = new SingleConnectionDataSource(H2Mode.MEM.url("batchbench"), "sa", "", true);
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        JdbcContext jdbcContext = new JdbcContext();
+        jdbcContext.setDataSource(dataSource);
+
+        List<AddStatement> statements = new ArrayList<>(USERS);
+        for (int i = 0; i < USERS; i++) {
+            statements.add(new AddStatement(new User("b" + i, "bench", "1234", null, 0, 0, null)));
+        }
+
+        // AddStatement 는 id, name, password 만 넣으므로 그에 맞는 테이블을 따로 만든다
+        jdbcTemplate.execute("drop table if exists users");
+        jdbcTemplate.execute("create table users (id varchar(10) primary key, name varchar(20) not null, password varchar(10) not null)");
+        long start = System.nanoTime();
+        for (AddStatement statement : statements) {
+            jdbcContext.workWithStatementStrategy(statement);
+        }
+        print("row-at-a-time", System.nanoTime() - start);
+
+        for (int batchSize : new int[]{100, 1_000, 10_000}) {
+            jdbcTemplate.execute("delete from users");
+            jdbcContext.setBatchSize(batchSize);
+            start = System.nanoTime();
+            jdbcContext.workWithBatch(statements);
+            print("batch=" + batchSize, System.nanoTime() - start);
+        }
+        jdbcTemplate.execute("drop table users");
+        dataSource.destroy();
+    }
+
+    private static void print(String name, long elapsedNanos) {
+        System.out.printf("%-14s %,10.0f rows/s%n", name, USERS / (elapsedNanos / 1_000_000_000.0));
+    }
+}
@@ -0,0 +1,153 @@
+package toby.spring.user.dao;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+import toby.spring.user.datasource.CountingDataSource;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class JdbcContextTest {
+    private static final String INSERT = "insert into users (id, name, password, email) values ('%s', 'name', 'pw', 'a@b.c')";
+
+    private EmbeddedDatabase db;
+    private CountingDataSource dataSource;
+    private JdbcContext jdbcContext;
+    private PlatformTransactionManager transactionManager;
+
+    @BeforeEach
+    void setUp() {
+        db = new EmbeddedDatabaseBuilder()
+                .generateUniqueName(true)
+                .setType(EmbeddedDatabaseType.H2)
+                .addScript("schema.sql")
+                .build();
+        dataSource = new CountingDataSource(db);
+        jdbcContext = new JdbcContext();
+        jdbcContext.setDataSource(dataSource);
+        transactionManager = new DataSourceTransactionManager(dataSource);
+    }
+
+    @AfterEach
+    void tearDown() {
+        db.shutdown();
+    }
+
+    @Test
+    void connectionPerStatementWithoutTransaction() throws SQLException {
+        jdbcContext.executeSql(String.format(INSERT, "1"));
+        jdbcContext.executeSql(String.format(INSERT, "2"));
+
+        assertEquals(2, dataSource.getMetrics().getAcquisitions());
+        assertEquals(0, dataSource.getMetrics().getOpenConnections());
+    }
+
+    @Test
+    void joinTransaction() throws SQLException {
+        TransactionStatus status = transactionManager.getTransaction(new DefaultTransactionDefinition());
+        jdbcContext.executeSql(String.format(INSERT, "1"));
+        jdbcContext.executeSql(String.format(INSERT, "2"));
+        transactionManager.rollback(status);
+
+        assertEquals(1, dataSource.getMetrics().getAcquisitions());
+        assertEquals(0, dataSource.getMetrics().getOpenConnections());
+        assertEquals(0, new JdbcTemplate(db).queryForObject("select count(*) from users", Integer.class));
+    }
+
+    @Test
+    void batchWithParameters() throws SQLException {
+        jdbcContext.setBatchSize(2);
+
+        int[][] counts = jdbcContext.workWithBatch(
+                "insert into users (id, name, password, email) values (?, 'name', 'pw', 'a@b.c')",
+                Arrays.asList("1", "2", "3"),
+                (ps, id) -> ps.setString(1, id));
+
+        assertEquals(2, counts.length);
+        assertArrayEquals(new int[]{1, 1}, counts[0]);
+        assertArrayEquals(new int[]{1}, counts[1]);
+        assertEquals(1, dataSource.getMetrics().getAcquisitions());
+        assertEquals(3, new JdbcTemplate(db).queryForObject("select count(*) from users", Integer.class));
+    }
+
+    @Test
+    void batchWithStrategies() throws SQLException {
+        int[][] counts = jdbcContext.workWithBatch(Arrays.asList(
+                new InsertStatement("1"),
+                new InsertStatement("2"),
+                new DeleteStatement("1"),
+                new InsertStatement("3")));
+
+        assertEquals(3, counts.length);
+        assertArrayEquals(new int[]{1, 1}, counts[0]);
+        assertArrayEquals(new int[]{1}, counts[1]);
+        assertArrayEquals(new int[]{1}, counts[2]);
+        assertEquals(2, new JdbcTemplate(db).queryForObject("select count(*) from users", Integer.class));
+    }
+
+    @Test
+    void queryStopsEarly() throws SQLException {
+        jdbcContext.workWithBatch(Arrays.asList(new InsertStatement("1"), new InsertStatement("2"), new InsertStatement("3")));
+        List<String> ids = new ArrayList<>();
+
+        int rows = jdbcContext.query("select id from users where id > ? order by id", ps -> ps.setString(1, "0"), rs -> {
+            ids.add(rs.getString("id"));
+            return ids.size() < 2;
+        });
+
+        assertEquals(2, rows);
+        assertEquals(Arrays.asList("1", "2"), ids);
+        assertEquals(0, dataSource.getMetrics().getOpenConnections());
+    }
+
+    private static class InsertStatement implements BatchStatementStrategy {
+        private final String id;
+
+        private InsertStatement(String id) {
+            this.id = id;
+        }
+
+        @Override
+        public String getSql() {
+            return "insert into users (id, name, password, email) values (?, 'name', 'pw', 'a@b.c')";
+        }
+
+        @Override
+        public void setValues(PreparedStatement ps) throws SQLException {
+            ps.setString(1, id);
+        }
+    }
+
+    private static class DeleteStatement implements BatchStatementStrategy {
+        private final String id;
+
+        private DeleteStatement(String id) {
+            this.id = id;
+        }
+
+        @Override
+        public String getSql() {
+            return "delete from users where id = ?";
+        }
+
+        @Override
+        public void setValues(PreparedStatement ps) throws SQLException {
+            ps.setString(1, id);
+        }
+    }
+}
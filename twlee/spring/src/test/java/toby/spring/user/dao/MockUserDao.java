@@ -1,8 +1,12 @@
 package toby.spring.user.dao;
 
+import toby.spring.user.domain.Level;
 import toby.spring.user.domain.User;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 public class MockUserDao implements UserDao {
     private List<User> users;
@@ -16,6 +20,11 @@ public class MockUserDao implements UserDao {
         throw new UnsupportedOperationException();
     }
 
+    @Override
+    public void addAll(Collection<User> users) {
+        throw new UnsupportedOperationException();
+    }
+
     @Override
     public void add_exception(User user) {
         throw new UnsupportedOperationException();
@@ -31,6 +40,27 @@ public class MockUserDao implements UserDao {
         return users;
     }
 
+    @Override
+    public List<User> getPage(String afterId, int limit) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void forEach(Consumer<User> action) {
+        users.forEach(action);
+    }
+
+    @Override
+    public void lockUpgradeCandidates(int minLoginForSilver, int minRecommendForGold, Consumer<User> action) {
+        users.forEach(action);
+    }
+
+    // 걸러내는 일은 서비스의 canUpgradeLevel 에 맡긴다
+    @Override
+    public void findUpgradeCandidates(int minLoginForSilver, int minRecommendForGold, Consumer<User> action) {
+        users.forEach(action);
+    }
+
     @Override
     public void deleteAll() {
         throw new UnsupportedOperationException();
@@ -41,8 +71,33 @@ public class MockUserDao implements UserDao {
         throw new UnsupportedOperationException();
     }
 
+    @Override
+    public int upgradeLevels(Collection<User> candidates) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Map<String, Level> getLevelsForUpdate(Collection<String> ids) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Map<Level, Integer> getCountByLevel() {
+        throw new UnsupportedOperationException();
+    }
+
     @Override
     public void update(User user) {
 
     }
+
+    @Override
+    public void updateAll(List<User> users) {
+
+    }
+
+    @Override
+    public void updateLevels(List<User> users) {
+
+    }
 }
@@ -0,0 +1,200 @@
+package toby.spring.user.dao;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PoolingConnectionMakerTest {
+    private final AtomicInteger created = new AtomicInteger();
+    private PoolingConnectionMaker connectionMaker;
+
+    @BeforeEach
+    void setUp() {
+        ConnectionMaker h2 = () -> {
+            created.incrementAndGet();
+            return DriverManager.getConnection("jdbc:h2:mem:pooling;DB_CLOSE_DELAY=-1", "sa", "");
+        };
+        connectionMaker = new PoolingConnectionMaker(h2, 2);
+        connectionMaker.setBorrowTimeoutMillis(100);
+    }
+
+    @AfterEach
+    void tearDown() {
+        connectionMaker.close();
+    }
+
+    @Test
+    void reuse() throws SQLException, ClassNotFoundException {
+        connectionMaker.makeConnection().close();
+        connectionMaker.makeConnection().close();
+
+        assertEquals(1, created.get());
+        assertEquals(1, connectionMaker.getIdleConnections());
+    }
+
+    @Test
+    void closedProxy() throws SQLException, ClassNotFoundException {
+        Connection conn = connectionMaker.makeConnection();
+        conn.close();
+
+        assertThat(conn.isClosed()).isTrue();
+        assertThatThrownBy(() -> conn.prepareStatement("select 1"))
+                .isInstanceOf(SQLException.class);
+    }
+
+    @Test
+    void borrowTimeout() throws SQLException, ClassNotFoundException {
+        Connection conn1 = connectionMaker.makeConnection();
+        Connection conn2 = connectionMaker.makeConnection();
+
+        assertThatThrownBy(() -> connectionMaker.makeConnection())
+                .isInstanceOf(SQLTransientConnectionException.class);
+        assertEquals(2, connectionMaker.getActiveConnections());
+
+        conn1.close();
+        conn2.close();
+        assertEquals(0, connectionMaker.getActiveConnections());
+    }
+
+    @Test
+    void maxLifetime() throws SQLException, ClassNotFoundException {
+        connectionMaker.setMaxLifetimeMillis(0);
+
+        connectionMaker.makeConnection().close();
+        connectionMaker.makeConnection().close();
+
+        assertEquals(2, created.get());
+        assertEquals(0, connectionMaker.getTotalConnections());
+    }
+
+    @Test
+    void idleEviction() throws SQLException, ClassNotFoundException {
+        connectionMaker.makeConnection().close();
+        connectionMaker.setIdleTimeoutMillis(0);
+
+        assertEquals(1, connectionMaker.evictIdleConnections());
+        assertEquals(0, connectionMaker.getTotalConnections());
+    }
+
+    @Test
+    void prewarm() throws SQLException, ClassNotFoundException {
+        connectionMaker.setMinIdle(2);
+
+        assertEquals(2, connectionMaker.prewarm());
+        assertEquals(2, created.get());
+        assertEquals(2, connectionMaker.getIdleConnections());
+        assertThat(connectionMaker.getLastWarmUpMillis()).isGreaterThanOrEqualTo(0);
+
+        connectionMaker.makeConnection().close();
+        assertEquals(2, created.get());
+    }
+
+    @Test
+    void idleEvictionKeepsMinIdle() {
+        connectionMaker.setMinIdle(1);
+        connectionMaker.prewarm();
+        connectionMaker.setIdleTimeoutMillis(0);
+
+        assertEquals(0, connectionMaker.evictIdleConnections());
+        assertEquals(1, connectionMaker.getTotalConnections());
+    }
+
+    @Test
+    void rollbackOnReturn() throws SQLException, ClassNotFoundException {
+        Connection conn = connectionMaker.makeConnection();
+        conn.setAutoCommit(false);
+        conn.close();
+
+        Connection reused = connectionMaker.makeConnection();
+        assertThat(reused.getAutoCommit()).isTrue();
+        reused.close();
+    }
+
+    @Test
+    void closeOutstandingStatementsOnReturn() throws SQLException, ClassNotFoundException {
+        Connection conn = connectionMaker.makeConnection();
+        Statement statement = conn.createStatement();
+        PreparedStatement ps = conn.prepareStatement("select 1");
+        conn.close();
+
+        assertThat(statement.isClosed()).isTrue();
+        assertThat(ps.isClosed()).isTrue();
+    }
+
+    @Test
+    void closeOutstandingCachedStatementsOnReturn() throws SQLException, ClassNotFoundException {
+        connectionMaker.setStatementCacheSize(1);
+
+        Connection conn = connectionMaker.makeConnection();
+        PreparedStatement ps = conn.prepareStatement("select 1");
+        conn.close();
+        assertThat(ps.isClosed()).isTrue();
+
+        // 닫지 않고 반납된 Statement 는 캐시로 돌아가지 않는다
+        try (Connection reused = connectionMaker.makeConnection()) {
+            reused.prepareStatement("select 1").close();
+        }
+        assertEquals(0, connectionMaker.getStatementCacheHits());
+    }
+
+    @Test
+    void statementsReturnPooledConnection() throws SQLException, ClassNotFoundException {
+        try (Connection conn = connectionMaker.makeConnection()) {
+            Statement statement = conn.createStatement();
+            PreparedStatement ps = conn.prepareStatement("select 1");
+            CallableStatement call = conn.prepareCall("call 1");
+
+            assertThat(statement.getConnection()).isSameAs(conn);
+            assertThat(ps.getConnection()).isSameAs(conn);
+            assertThat(call.getConnection()).isSameAs(conn);
+
+            ps.close();
+            assertThat(ps.isClosed()).isTrue();
+        }
+    }
+
+    @Test
+    void statementCache() throws SQLException, ClassNotFoundException {
+        connectionMaker.setStatementCacheSize(1);
+
+        try (Connection conn = connectionMaker.makeConnection()) {
+            conn.prepareStatement("select 1").close();
+        }
+        try (Connection conn = connectionMaker.makeConnection()) {
+            PreparedStatement ps = conn.prepareStatement("select 1");
+            assertThat(ps.getConnection()).isSameAs(conn);
+            ps.close();
+            assertThat(ps.isClosed()).isTrue();
+        }
+
+        assertEquals(1, connectionMaker.getStatementCacheHits());
+        assertEquals(1, connectionMaker.getStatementCacheMisses());
+    }
+
+    @Test
+    void statementCacheEvictsLeastRecentlyUsed() throws SQLException, ClassNotFoundException {
+        connectionMaker.setStatementCacheSize(1);
+
+        try (Connection conn = connectionMaker.makeConnection()) {
+            conn.prepareStatement("select 1").close();
+            conn.prepareStatement("select 2").close();
+            conn.prepareStatement("select 1").close();
+        }
+
+        assertEquals(0, connectionMaker.getStatementCacheHits());
+        assertEquals(3, connectionMaker.getStatementCacheMisses());
+    }
+}
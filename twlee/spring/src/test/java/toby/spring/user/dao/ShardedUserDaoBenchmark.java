@@ -0,0 +1,70 @@
+package toby.spring.user.dao;
+
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import toby.spring.user.domain.Level;
+import toby.spring.user.domain.User;
+import toby.spring.user.sqlservice.SimpleSqlService;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 샤드 수(임베디드 H2 개수)를 늘려가며 add/get 처리량을 비교한다.
+ * 인자로 샤드 수 목록을 줄 수 있다. ex) 1 2 4 8
+ */
+class ShardedUserDaoBenchmark {
+    private static final int THREADS = 16;
+    private static final int OPERATIONS_PER_THREAD = 5_000;
+
+    public static void main(String[] args) throws InterruptedException {
+        String[] shardCounts = args.length == 0 ? new String[]{"1", "2", "4", "8"} : args;
+        for (String shardCount : shardCounts) {
+            run(Integer.parseInt(shardCount));
+        }
+    }
+
+    private static void run(int shardCount) throws InterruptedException {
+        List<EmbeddedDatabase> databases = new ArrayList<>();
+        List<DataSource> dataSources = new ArrayList<>();
+        for (int i = 0; i < shardCount; i++) {
+            EmbeddedDatabase db = new EmbeddedDatabaseBuilder()
+                    .generateUniqueName(true)
+                    .setType(EmbeddedDatabaseType.H2)
+                    .addScript("schema.sql")
+                    .build();
+            databases.add(db);
+            dataSources.add(db);
+        }
+
+        try (ShardedUserDao userDao = new ShardedUserDao(dataSources, new SimpleSqlService())) {
+            AtomicInteger sequence = new AtomicInteger();
+            ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+            long start = System.nanoTime();
+            for (int t = 0; t < THREADS; t++) {
+                executor.execute(() -> {
+                    for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                        String id = "u" + sequence.incrementAndGet();
+                        userDao.add(new User(id, "bench", "1234", Level.BASIC, 0, 0, id + "@email.co.kr"));
+                        userDao.get(id);
+                    }
+                });
+            }
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.MINUTES);
+            long elapsed = System.nanoTime() - start;
+
+            long operations = 2L * THREADS * OPERATIONS_PER_THREAD;
+            System.out.printf("shards=%d  %,10.0f ops/s  (getCount=%d)%n",
+                    shardCount, operations / (elapsed / 1_000_000_000.0), userDao.getCount());
+        } finally {
+            databases.forEach(EmbeddedDatabase::shutdown);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package toby.spring.user.dao;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import toby.spring.user.domain.Level;
+import toby.spring.user.domain.User;
+import toby.spring.user.exception.DuplicateUserIdException;
+import toby.spring.user.sqlservice.SimpleSqlService;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ShardedUserDaoTest {
+    private static final int SHARD_COUNT = 3;
+
+    private final List<EmbeddedDatabase> databases = new ArrayList<>();
+    private ShardedUserDao userDao;
+
+    @BeforeEach
+    void setUp() {
+        List<DataSource> dataSources = new ArrayList<>();
+        for (int i = 0; i < SHARD_COUNT; i++) {
+            EmbeddedDatabase db = new EmbeddedDatabaseBuilder()
+                    .generateUniqueName(true)
+                    .setType(EmbeddedDatabaseType.H2)
+                    .addScript("schema.sql")
+                    .build();
+            databases.add(db);
+            dataSources.add(db);
+        }
+        userDao = new ShardedUserDao(dataSources, new SimpleSqlService());
+    }
+
+    @AfterEach
+    void tearDown() {
+        userDao.close();
+        databases.forEach(EmbeddedDatabase::shutdown);
+    }
+
+    @Test
+    void addAndGet() {
+        User user = user("shard1");
+        userDao.add(user);
+
+        assertEquals(user.getName(), userDao.get(user.getId()).getName());
+        assertEquals(1, userDao.getCount());
+    }
+
+    @Test
+    void deadlineIsAppliedOnShardThreads() {
+        userDao.add(user("shard1"));
+
+        try (Deadline.Scope ignored = Deadline.start(0)) {
+            assertThatThrownBy(userDao::getCount).isInstanceOf(QueryTimeoutException.class);
+        }
+        // 실행 스레드에 건 마감은 끝나면 되돌린다
+        assertEquals(1, userDao.getCount());
+    }
+
+    @Test
+    void getAllMergedInIdOrder() {
+        for (int i = 20; i > 0; i--) {
+            userDao.add(user(String.format("user%02d", i)));
+        }
+
+        List<User> users = userDao.getAll();
+        assertEquals(20, users.size());
+        assertEquals(20, userDao.getCount());
+        for (int i = 0; i < users.size(); i++) {
+            assertEquals(String.format("user%02d", i + 1), users.get(i).getId());
+        }
+    }
+
+    @Test
+    void getPageAcrossShards() {
+        for (int i = 1; i <= 20; i++) {
+            userDao.add(user(String.format("user%02d", i)));
+        }
+
+        List<User> firstPage = userDao.getPage(null, 7);
+        assertThat(firstPage).extracting(User::getId).containsExactly(
+                "user01", "user02", "user03", "user04", "user05", "user06", "user07");
+        List<User> lastPage = userDao.getPage("user14", 7);
+        assertThat(lastPage).extracting(User::getId).containsExactly(
+                "user15", "user16", "user17", "user18", "user19", "user20");
+    }
+
+    @Test
+    void deleteAll() {
+        for (int i = 0; i < 10; i++) {
+            userDao.add(user("user" + i));
+        }
+        userDao.deleteAll();
+
+        assertEquals(0, userDao.getCount());
+        assertThat(userDao.getAll()).isEmpty();
+    }
+
+    @Test
+    void addAllReportsDuplicatesFromEveryShard() {
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            users.add(user("user" + i));
+        }
+        userDao.add(user("user3"));
+        userDao.add(user("user17"));
+
+        assertThatThrownBy(() -> userDao.addAll(users))
+                .isInstanceOf(DuplicateUserIdException.class)
+                .satisfies(e -> assertThat(((DuplicateUserIdException) e).getDuplicateIds())
+                        .containsExactlyInAnyOrder("user3", "user17"));
+        assertEquals(30, userDao.getCount());
+    }
+
+    @Test
+    void mergeById() {
+        List<User> merged = ShardedUserDao.mergeById(Arrays.asList(
+                Arrays.asList(user("a"), user("d")),
+                new ArrayList<>(),
+                Arrays.asList(user("b"), user("c"), user("e"))));
+
+        assertThat(merged).extracting(User::getId).containsExactly("a", "b", "c", "d", "e");
+    }
+
+    private User user(String id) {
+        return new User(id, "샤드" + id, "1234", Level.BASIC, 0, 0, id + "@email.co.kr");
+    }
+}
@@ -0,0 +1,64 @@
+package toby.spring.user.dao;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.datasource.init.DatabasePopulatorUtils;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import toby.spring.user.datasource.PoolingDataSource;
+import toby.spring.user.domain.Level;
+import toby.spring.user.domain.User;
+import toby.spring.user.sqlservice.SimpleSqlService;
+
+import java.util.function.IntConsumer;
+
+/**
+ * PreparedStatement 캐시 유무에 따른 userGet / userUpdate 호출당 지연시간 비교.
+ * 파싱 비용만 보이도록 메모리 모드 H2 를 쓴다.
+ */
+class StatementCacheBenchmark {
+    private static final int USERS = 1_000;
+    private static final int WARMUP = 10_000;
+    private static final int ITERATIONS = 50_000;
+
+    public static void main(String[] args) {
+        run(0);
+        run(16);
+    }
+
+    private static void run(int statementCacheSize) {
+        H2Settings settings = new H2Settings(H2Mode.MEM, "stmtcache" + statementCacheSize, "sa", "");
+        PoolingConnectionMaker pool = new PoolingConnectionMaker(new DConnectionMaker(settings), 1);
+        pool.setStatementCacheSize(statementCacheSize);
+        try (PoolingDataSource dataSource = new PoolingDataSource(pool)) {
+            DatabasePopulatorUtils.execute(new ResourceDatabasePopulator(new ClassPathResource("schema.sql")), dataSource);
+            UserDao userDao = new UserSqlServiceDao(dataSource, new SimpleSqlService());
+            for (int i = 0; i < USERS; i++) {
+                userDao.add(user(i, 0));
+            }
+
+            String name = "cache=" + statementCacheSize;
+            measure(name, "userGet", i -> userDao.get(id(i % USERS)));
+            measure(name, "userUpdate", i -> userDao.update(user(i % USERS, i)));
+            System.out.printf("%-9s hits=%d misses=%d%n", name, pool.getStatementCacheHits(), pool.getStatementCacheMisses());
+        }
+    }
+
+    private static void measure(String name, String operation, IntConsumer task) {
+        for (int i = 0; i < WARMUP; i++) {
+            task.accept(i);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            task.accept(i);
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("%-9s %-10s %6.2f us/op%n", name, operation, elapsed / 1_000.0 / ITERATIONS);
+    }
+
+    private static String id(int i) {
+        return "s" + i;
+    }
+
+    private static User user(int i, int login) {
+        return new User(id(i), "bench", "1234", Level.BASIC, login, 0, id(i) + "@email.co.kr");
+    }
+}
@@ -138,6 +138,12 @@ class UserJdbcTemplateDaoTest {
         checkSameUser(user1, findUser1);
     }
 
+    @Test
+    void getPageRejectsLimitBelowOne() {
+        assertThatThrownBy(() -> userJdbcTemplateDao.getPage(null, 0)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> userJdbcTemplateDao.getPage(user1.getId(), -1)).isInstanceOf(IllegalArgumentException.class);
+    }
+
     private void checkSameUser(User expect, User actual) {
         assertEquals(expect.getId(), actual.getId());
         assertEquals(expect.getName(), actual.getName());
@@ -0,0 +1,79 @@
+package toby.spring.user.dao;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.datasource.init.DatabasePopulatorUtils;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import toby.spring.user.datasource.PoolingDataSource;
+import toby.spring.user.domain.Level;
+import toby.spring.user.domain.User;
+
+import java.util.function.IntConsumer;
+
+/**
+ * 기존 람다(컬럼 이름 조회 + varargs update)와 UserRowMapper / UserBinder 의 호출당 시간 비교.
+ * 매핑과 바인딩 비용만 보이도록 메모리 모드 H2 를 쓴다.
+ */
+class UserMapperBenchmark {
+    private static final String INSERT = "insert into users (id, name, password, level, login, recommend, email) values (?, ?, ?, ?, ?, ?, ?)";
+    private static final String UPDATE = "update users set name = ?, password = ?, level = ?, login = ?, recommend = ?, email = ? where id = ?";
+    private static final String SELECT_ALL = "select * from users order by id";
+    private static final int USERS = 1_000;
+    private static final int WARMUP = 200;
+    private static final int ITERATIONS = 1_000;
+
+    private static final RowMapper<User> LAMBDA_ROW_MAPPER = (rs, rowNum) -> {
+        User user = new User();
+        user.setId(rs.getString("id"));
+        user.setName(rs.getString("name"));
+        user.setPassword(rs.getString("password"));
+        user.setLevel(Level.valueOf(rs.getInt("level")));
+        user.setLogin(rs.getInt("login"));
+        user.setRecommend(rs.getInt("recommend"));
+        user.setEmail(rs.getString("email"));
+        return user;
+    };
+
+    public static void main(String[] args) {
+        H2Settings settings = new H2Settings(H2Mode.MEM, "usermapper", "sa", "");
+        PoolingConnectionMaker pool = new PoolingConnectionMaker(new DConnectionMaker(settings), 1);
+        pool.setStatementCacheSize(16);
+        try (PoolingDataSource dataSource = new PoolingDataSource(pool)) {
+            DatabasePopulatorUtils.execute(new ResourceDatabasePopulator(new ClassPathResource("schema.sql")), dataSource);
+            JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+            for (int i = 0; i < USERS; i++) {
+                jdbcTemplate.update(INSERT, UserBinder.insert(user(i, 0)));
+            }
+
+            measure("lambda", "getAll", i -> jdbcTemplate.query(SELECT_ALL, LAMBDA_ROW_MAPPER));
+            measure("mapper", "getAll", i -> jdbcTemplate.query(SELECT_ALL, new UserRowMapper()));
+            measure("varargs", "update", i -> {
+                User user = user(i % USERS, i);
+                jdbcTemplate.update(UPDATE, user.getName(), user.getPassword(), user.getLevel().intValue(),
+                        user.getLogin(), user.getRecommend(), user.getEmail(), user.getId());
+            });
+            measure("binder", "update", i -> jdbcTemplate.update(UPDATE, UserBinder.update(user(i % USERS, i))));
+        }
+    }
+
+    private static void measure(String name, String operation, IntConsumer task) {
+        for (int i = 0; i < WARMUP; i++) {
+            task.accept(i);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            task.accept(i);
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("%-8s %-7s %8.2f us/op%n", name, operation, elapsed / 1_000.0 / ITERATIONS);
+    }
+
+    private static String id(int i) {
+        return "m" + i;
+    }
+
+    private static User user(int i, int login) {
+        return new User(id(i), "bench", "1234", Level.BASIC, login, 0, id(i) + "@email.co.kr");
+    }
+}
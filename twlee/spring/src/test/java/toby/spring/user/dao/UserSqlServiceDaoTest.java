@@ -4,9 +4,12 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.dao.DuplicateKeyException;
 import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
 import org.springframework.jdbc.support.SQLErrorCodeSQLExceptionTranslator;
+import org.springframework.transaction.support.TransactionTemplate;
 import toby.spring.user.domain.Level;
 import toby.spring.user.domain.User;
 import toby.spring.user.exception.DuplicateUserIdException;
@@ -14,12 +17,16 @@ import toby.spring.user.sqlservice.SqlService;
 
 import javax.sql.DataSource;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static toby.spring.user.UserFixture.*;
+import static toby.spring.user.service.UserServiceImpl.MIN_LOGCOUNT_FOR_SILVER;
+import static toby.spring.user.service.UserServiceImpl.MIN_RECOMMEND_FOR_GOLD;
 
 @SpringBootTest
 class UserSqlServiceDaoTest {
@@ -132,6 +139,127 @@ class UserSqlServiceDaoTest {
         checkSameUser(user3, userList.get(2));
     }
 
+    @Test
+    void getPage() {
+        userDao.deleteAll();
+        userDao.addAll(Arrays.asList(user1, user2, user3));
+
+        List<User> firstPage = userDao.getPage(null, 2);
+        assertEquals(firstPage.size(), 2);
+        checkSameUser(user1, firstPage.get(0));
+        checkSameUser(user2, firstPage.get(1));
+
+        List<User> secondPage = userDao.getPage(firstPage.get(1).getId(), 2);
+        assertEquals(secondPage.size(), 1);
+        checkSameUser(user3, secondPage.get(0));
+
+        assertThat(userDao.getPage(user3.getId(), 2)).isEmpty();
+    }
+
+    @Test
+    void getPageRejectsLimitBelowOne() {
+        userDao.deleteAll();
+        userDao.addAll(Arrays.asList(user1, user2, user3));
+
+        assertThatThrownBy(() -> userDao.getPage(null, 0)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> userDao.getPage(user1.getId(), -1)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void forEach() {
+        userDao.deleteAll();
+        userDao.add(user3);
+        userDao.add(user1);
+        userDao.add(user2);
+
+        List<User> userList = new ArrayList<>();
+        userDao.forEach(userList::add);
+
+        assertEquals(userList.size(), 3);
+        checkSameUser(user1, userList.get(0));
+        checkSameUser(user2, userList.get(1));
+        checkSameUser(user3, userList.get(2));
+    }
+
+    @Test
+    void findUpgradeCandidates() {
+        userDao.deleteAll();
+        List<User> users = Arrays.asList(USER4, USER5, USER6, USER7, USER8, USER9);
+        userDao.addAll(users);
+
+        List<User> candidates = new ArrayList<>();
+        userDao.findUpgradeCandidates(MIN_LOGCOUNT_FOR_SILVER, MIN_RECOMMEND_FOR_GOLD, candidates::add);
+
+        assertThat(candidates).extracting(User::getId).containsExactly(USER6.getId(), USER8.getId(), USER9.getId());
+        // 등급 올리기에 쓰지 않는 컬럼은 읽지 않는다
+        assertThat(candidates).extracting(User::getName).containsOnlyNulls();
+        assertThat(candidates).extracting(User::getEmail).doesNotContainNull();
+    }
+
+    @Test
+    void lockUpgradeCandidates() {
+        userDao.deleteAll();
+        userDao.addAll(Arrays.asList(USER4, USER5, USER6, USER7, USER8, USER9));
+
+        List<User> candidates = new ArrayList<>();
+        new TransactionTemplate(new DataSourceTransactionManager(dataSource)).executeWithoutResult(status ->
+                userDao.lockUpgradeCandidates(MIN_LOGCOUNT_FOR_SILVER, MIN_RECOMMEND_FOR_GOLD, candidates::add));
+
+        assertThat(candidates).extracting(User::getId).containsExactly(USER6.getId(), USER8.getId(), USER9.getId());
+    }
+
+    @Test
+    void updateLevels() {
+        userDao.deleteAll();
+        userDao.addAll(Arrays.asList(user1, user2));
+
+        User levelOnly = new User();
+        levelOnly.setId(user1.getId());
+        levelOnly.setLevel(Level.GOLD);
+        userDao.updateLevels(Arrays.asList(levelOnly));
+
+        User findUser1 = userDao.get(user1.getId());
+        assertEquals(findUser1.getLevel(), Level.GOLD);
+        assertEquals(findUser1.getName(), user1.getName());
+        assertEquals(findUser1.getPassword(), user1.getPassword());
+    }
+
+    @Test
+    void upgradeLevels() {
+        userDao.deleteAll();
+        userDao.addAll(Arrays.asList(USER4, USER5, USER6, USER7, USER8, USER9));
+
+        List<User> candidates = new ArrayList<>();
+        userDao.findUpgradeCandidates(MIN_LOGCOUNT_FOR_SILVER, MIN_RECOMMEND_FOR_GOLD, candidates::add);
+
+        assertEquals(userDao.upgradeLevels(candidates), 3);
+        // 넘긴 객체의 등급은 그대로다
+        assertThat(candidates).extracting(User::getLevel).containsExactly(Level.SILVER, Level.BASIC, Level.SILVER);
+
+        assertEquals(userDao.get(USER4.getId()).getLevel(), Level.BASIC);
+        assertEquals(userDao.get(USER5.getId()).getLevel(), Level.SILVER);
+        assertEquals(userDao.get(USER6.getId()).getLevel(), Level.GOLD);
+        assertEquals(userDao.get(USER7.getId()).getLevel(), Level.SILVER);
+        assertEquals(userDao.get(USER8.getId()).getLevel(), Level.SILVER);
+        assertEquals(userDao.get(USER9.getId()).getLevel(), Level.GOLD);
+    }
+
+    @Test
+    void upgradeLevelsSkipsUsersWhoseLevelChanged() {
+        userDao.deleteAll();
+        userDao.addAll(Arrays.asList(USER6, USER9));
+
+        List<User> candidates = new ArrayList<>();
+        userDao.findUpgradeCandidates(MIN_LOGCOUNT_FOR_SILVER, MIN_RECOMMEND_FOR_GOLD, candidates::add);
+        User changed = userDao.get(USER6.getId());
+        changed.setLevel(Level.GOLD);
+        userDao.update(changed);
+
+        assertEquals(1, userDao.upgradeLevels(candidates));
+        assertEquals(Level.GOLD, userDao.get(USER6.getId()).getLevel());
+        assertEquals(Level.GOLD, userDao.get(USER9.getId()).getLevel());
+    }
+
     @Test
     void add_exception() {
         userDao.deleteAll();
@@ -141,6 +269,40 @@ class UserSqlServiceDaoTest {
                 .isInstanceOf(DuplicateUserIdException.class);
     }
 
+    @Test
+    void addAll() {
+        userDao.deleteAll();
+
+        userDao.addAll(Arrays.asList(user1, user2));
+        assertEquals(userDao.getCount(), 2);
+        checkSameUser(user2, userDao.get(user2.getId()));
+
+        assertThatThrownBy(() -> userDao.addAll(Arrays.asList(user2, user3)))
+                .isInstanceOf(DuplicateUserIdException.class)
+                .satisfies(e -> assertThat(((DuplicateUserIdException) e).getDuplicateIds()).containsExactly(user2.getId()));
+        assertEquals(userDao.getCount(), 3);
+    }
+
+    @Test
+    void addAllRethrowsFailureOtherThanDuplicate() {
+        userDao.deleteAll();
+        userDao.add(user1);
+
+        // name 이 null 인 행은 중복이 아닌 이유로 실패한다
+        User noName = new User("noname", null, "p", Level.BASIC, 0, 0, "noname@email.co.kr");
+        assertThatThrownBy(() -> userDao.addAll(Arrays.asList(noName, user2, user1)))
+                .isInstanceOf(DataIntegrityViolationException.class)
+                .isNotInstanceOf(DuplicateKeyException.class)
+                .isNotInstanceOf(DuplicateUserIdException.class);
+    }
+
+    @Test
+    void batchSizeMustBePositive() {
+        UserSqlServiceDao dao = new UserSqlServiceDao(dataSource, defaultSqlService);
+
+        assertThatThrownBy(() -> dao.setBatchSize(0)).isInstanceOf(IllegalArgumentException.class);
+    }
+
     @Test
     void sqlExceptionTranslate() {
         userDao.deleteAll();
@@ -172,6 +334,24 @@ class UserSqlServiceDaoTest {
         checkSameUser(user1, findUser1);
     }
 
+    @Test
+    void updateAll() {
+        userDao.deleteAll();
+        userDao.addAll(Arrays.asList(user1, user2));
+
+        user1.setLevel(Level.SILVER);
+        user2.setRecommend(77);
+        userDao.updateAll(Arrays.asList(user1, user2));
+
+        checkSameUser(user1, userDao.get(user1.getId()));
+        checkSameUser(user2, userDao.get(user2.getId()));
+
+        // 없는 사용자가 섞여 있으면 단건 update 처럼 실패한다
+        assertThatThrownBy(() -> userDao.updateAll(Arrays.asList(user1, user3)))
+                .isInstanceOf(RuntimeException.class)
+                .hasMessageContaining(user3.getId());
+    }
+
     private void checkSameUser(User expect, User actual) {
         assertEquals(expect.getId(), actual.getId());
         assertEquals(expect.getName(), actual.getName());
@@ -0,0 +1,107 @@
+package toby.spring.user.dao;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class WriteCoalescerTest {
+    private EmbeddedDatabase db;
+    private WriteCoalescer writeCoalescer;
+
+    @BeforeEach
+    void setUp() {
+        db = new EmbeddedDatabaseBuilder()
+                .generateUniqueName(true)
+                .setType(EmbeddedDatabaseType.H2)
+                .addScript("schema.sql")
+                .build();
+        writeCoalescer = new WriteCoalescer(db);
+    }
+
+    @AfterEach
+    void tearDown() {
+        db.shutdown();
+    }
+
+    @Test
+    void concurrentWrites() {
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            InsertStatement insert = new InsertStatement("u" + i);
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return writeCoalescer.submit(insert);
+                } catch (SQLException e) {
+                    throw new IllegalStateException(e);
+                }
+            }, executor));
+        }
+        futures.forEach(future -> assertEquals(1, future.join()));
+        executor.shutdown();
+
+        assertEquals(500, count());
+        assertEquals(500, writeCoalescer.getWriteCount());
+        assertThat(writeCoalescer.getBatchCount()).isBetween(1L, 500L);
+    }
+
+    @Test
+    void failureIsReportedToItsCallerOnly() throws SQLException {
+        writeCoalescer.submit(new InsertStatement("dup"));
+
+        assertThatThrownBy(() -> writeCoalescer.submit(new InsertStatement("dup")))
+                .isInstanceOf(SQLException.class);
+        assertEquals(1, writeCoalescer.submit(new InsertStatement("other")));
+        assertEquals(2, count());
+    }
+
+    @Test
+    void jdbcContextUsesCoalescerOutsideTransaction() throws SQLException {
+        JdbcContext jdbcContext = new JdbcContext();
+        jdbcContext.setDataSource(db);
+        jdbcContext.setWriteCoalescer(writeCoalescer);
+
+        jdbcContext.workWithStatementStrategy(new InsertStatement("1"));
+
+        assertEquals(1, writeCoalescer.getBatchCount());
+        assertEquals(1, count());
+    }
+
+    private int count() {
+        return new JdbcTemplate(db).queryForObject("select count(*) from users", Integer.class);
+    }
+
+    private static class InsertStatement implements BatchStatementStrategy {
+        private final String id;
+
+        private InsertStatement(String id) {
+            this.id = id;
+        }
+
+        @Override
+        public String getSql() {
+            return "insert into users (id, name, password, email) values (?, 'name', 'pw', 'a@b.c')";
+        }
+
+        @Override
+        public void setValues(PreparedStatement ps) throws SQLException {
+            ps.setString(1, id);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package toby.spring.user.datasource;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.withSettings;
+
+class AdmissionControlDataSourceTest {
+    private AdmissionControlDataSource dataSource;
+
+    @BeforeEach
+    void setUp() {
+        DriverManagerDataSource h2 = new DriverManagerDataSource("jdbc:h2:mem:admission;DB_CLOSE_DELAY=-1", "sa", "");
+        dataSource = new AdmissionControlDataSource(h2, 1, 1);
+        dataSource.setQueueTimeoutMillis(100);
+    }
+
+    @Test
+    void releaseOnClose() throws SQLException {
+        Connection conn = dataSource.getConnection();
+        assertEquals(1, dataSource.getActiveCount());
+
+        conn.close();
+        conn.close();
+        assertEquals(0, dataSource.getActiveCount());
+    }
+
+    @Test
+    void queueTimeout() throws SQLException {
+        try (Connection ignored = dataSource.getConnection()) {
+            assertThatThrownBy(() -> dataSource.getConnection())
+                    .isInstanceOf(SQLTransientConnectionException.class);
+        }
+        assertEquals(1, dataSource.getTimedOutCount());
+        assertEquals(0, dataSource.getQueueDepth());
+    }
+
+    @Test
+    void rejectWhenQueueIsFull() throws Exception {
+        dataSource.setQueueTimeoutMillis(5_000);
+        Connection conn = dataSource.getConnection();
+        CompletableFuture<Connection> waiter = CompletableFuture.supplyAsync(() -> {
+            try {
+                return dataSource.getConnection();
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        while (dataSource.getQueueDepth() == 0) {
+            Thread.onSpinWait();
+        }
+
+        assertThatThrownBy(() -> dataSource.getConnection())
+                .isInstanceOf(SQLTransientConnectionException.class);
+        assertEquals(1, dataSource.getRejectedCount());
+
+        conn.close();
+        waiter.get(1, TimeUnit.SECONDS).close();
+        assertEquals(2, dataSource.getAdmittedCount());
+        assertThat(dataSource.getWaitTime().getCount()).isEqualTo(2);
+    }
+
+    @Test
+    void closeTargetDataSource() throws Exception {
+        DataSource target = mock(DataSource.class, withSettings().extraInterfaces(AutoCloseable.class));
+
+        new AdmissionControlDataSource(target, 1, 1).close();
+
+        verify((AutoCloseable) target).close();
+    }
+}
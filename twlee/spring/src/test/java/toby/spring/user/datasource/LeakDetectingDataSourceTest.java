@@ -0,0 +1,101 @@
+package toby.spring.user.datasource;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import toby.spring.user.dao.UserDataDao;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class LeakDetectingDataSourceTest {
+    private EmbeddedDatabase db;
+    private LeakDetectingDataSource dataSource;
+
+    @BeforeEach
+    void setUp() {
+        db = new EmbeddedDatabaseBuilder()
+                .generateUniqueName(true)
+                .setType(EmbeddedDatabaseType.H2)
+                .addScript("schema.sql")
+                .build();
+        dataSource = new LeakDetectingDataSource(db);
+        dataSource.setLeakThresholdMillis(0);
+    }
+
+    @AfterEach
+    void tearDown() {
+        dataSource.close();
+        db.shutdown();
+    }
+
+    @Test
+    void noLeakWhenClosed() throws SQLException {
+        dataSource.getConnection().close();
+
+        assertEquals(0, dataSource.detectLeaks());
+        assertEquals(0, dataSource.getBorrowedCount());
+    }
+
+    @Test
+    void reportLeakLocation() {
+        // UserDataDao.getCount() 는 성공 경로에서 커넥션을 닫지 않는다
+        UserDataDao userDao = new UserDataDao();
+        userDao.setDataSource(dataSource);
+        userDao.getCount();
+
+        assertEquals(1, dataSource.detectLeaks());
+        assertEquals(0, dataSource.detectLeaks());
+        assertThat(dataSource.getLeakReports()).hasSize(1);
+        assertThat(dataSource.getLeakReports().get(0).getLocation()).contains("UserDataDao.getCount");
+    }
+
+    @Test
+    void reclaimLeakedConnection() throws SQLException {
+        dataSource.setReclaimLeakedConnections(true);
+        Connection leaked = dataSource.getConnection();
+
+        dataSource.detectLeaks();
+
+        assertEquals(1, dataSource.getReclaimedCount());
+        assertEquals(0, dataSource.getBorrowedCount());
+        assertThat(leaked.isClosed()).isTrue();
+        assertThatThrownBy(() -> leaked.prepareStatement("select 1"))
+                .isInstanceOf(SQLException.class);
+    }
+
+    @Test
+    void reclaimWaitsForCallInProgress() throws SQLException {
+        Connection target = mock(Connection.class);
+        DataSource targetDataSource = mock(DataSource.class);
+        when(targetDataSource.getConnection()).thenReturn(target);
+        LeakDetectingDataSource leakDetecting = new LeakDetectingDataSource(targetDataSource);
+        leakDetecting.setLeakThresholdMillis(0);
+        leakDetecting.setReclaimLeakedConnections(true);
+        Connection leaked = leakDetecting.getConnection();
+        // 빌려간 쪽이 호출하는 도중에 누수 감지가 돈 상황
+        when(target.getAutoCommit()).thenAnswer(invocation -> {
+            leakDetecting.detectLeaks();
+            verify(target, never()).close();
+            return true;
+        });
+
+        assertThat(leaked.getAutoCommit()).isTrue();
+
+        assertEquals(1, leakDetecting.getReclaimedCount());
+        verify(target).close();
+        assertThatThrownBy(leaked::getAutoCommit).isInstanceOf(SQLException.class);
+    }
+}
@@ -0,0 +1,57 @@
+package toby.spring.user.datasource;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ReadWriteRoutingDataSourceTest {
+    private ReadWriteRoutingDataSource routingDataSource;
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate writeTransaction;
+    private TransactionTemplate readOnlyTransaction;
+
+    @BeforeEach
+    void setUp() {
+        DataSource primary = new DriverManagerDataSource("jdbc:h2:mem:primary;DB_CLOSE_DELAY=-1", "sa", "");
+        DataSource replica = new DriverManagerDataSource("jdbc:h2:mem:replica;DB_CLOSE_DELAY=-1", "sa", "");
+        routingDataSource = new ReadWriteRoutingDataSource(primary, Collections.singletonList(replica));
+
+        DataSource dataSource = new LazyConnectionDataSourceProxy(routingDataSource);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        writeTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+    }
+
+    @Test
+    void routeByReadOnly() {
+        writeTransaction.execute(status -> jdbcTemplate.queryForObject("select 1", Integer.class));
+        readOnlyTransaction.execute(status -> jdbcTemplate.queryForObject("select 1", Integer.class));
+        readOnlyTransaction.execute(status -> jdbcTemplate.queryForObject("select 1", Integer.class));
+
+        assertEquals(1, routingDataSource.getMetrics().get(ReadWriteRoutingDataSource.PRIMARY).getAcquisitions());
+        assertEquals(2, routingDataSource.getMetrics().get("replica-0").getAcquisitions());
+    }
+
+    @Test
+    void fallbackToPrimaryWhenReplicaLags() {
+        routingDataSource.setLagChecker(replica -> 5_000);
+        routingDataSource.setMaxReplicaLagMillis(1_000);
+
+        readOnlyTransaction.execute(status -> jdbcTemplate.queryForObject("select 1", Integer.class));
+
+        assertEquals(1, routingDataSource.getMetrics().get(ReadWriteRoutingDataSource.PRIMARY).getAcquisitions());
+        assertEquals(0, routingDataSource.getMetrics().get("replica-0").getAcquisitions());
+        assertEquals(1, routingDataSource.getFallbackCount());
+    }
+}
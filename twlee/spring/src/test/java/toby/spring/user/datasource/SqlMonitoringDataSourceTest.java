@@ -0,0 +1,84 @@
+package toby.spring.user.datasource;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import toby.spring.user.dao.UserDao;
+import toby.spring.user.dao.UserSqlServiceDao;
+import toby.spring.user.domain.Level;
+import toby.spring.user.domain.User;
+import toby.spring.user.sqlservice.SimpleSqlService;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SqlMonitoringDataSourceTest {
+    private EmbeddedDatabase db;
+    private SqlMonitoringDataSource dataSource;
+
+    @BeforeEach
+    void setUp() {
+        db = new EmbeddedDatabaseBuilder()
+                .generateUniqueName(true)
+                .setType(EmbeddedDatabaseType.H2)
+                .addScript("schema.sql")
+                .build();
+        dataSource = new SqlMonitoringDataSource(db);
+    }
+
+    @AfterEach
+    void tearDown() {
+        db.shutdown();
+    }
+
+    @Test
+    void normalize() {
+        assertEquals("select * from users where id = ? and name = ?",
+                SqlMonitoringDataSource.normalize("select *  from users\n where id = 10 and name = 'it''s'"));
+    }
+
+    @Test
+    void bindValuesAreNotLogged() {
+        Map<Integer, Object> binds = new TreeMap<>();
+        binds.put(1, "user1");
+        binds.put(2, "secret-password");
+        binds.put(3, 1);
+        binds.put(4, null);
+
+        String described = SqlMonitoringDataSource.describe(binds);
+
+        assertEquals("[String, String, Integer, null]", described);
+        assertThat(described).doesNotContain("secret-password");
+    }
+
+    @Test
+    void latencyPerSql() {
+        UserDao userDao = new UserSqlServiceDao(dataSource, new SimpleSqlService());
+        userDao.add(new User("1", "name1", "pw", Level.BASIC, 0, 0, "1@email.co.kr"));
+        userDao.get("1");
+        userDao.get("1");
+
+        assertEquals(2, dataSource.getStatistics().get("select * from users where id = ?").getCount());
+        assertEquals(0, dataSource.getSlowQueryCount());
+        assertThat(dataSource.getExplainPlans()).isEmpty();
+    }
+
+    @Test
+    void explainSlowQueryOnce() {
+        dataSource.setSlowQueryThresholdMillis(0);
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.queryForList("select name from users where id = ?", "1");
+        jdbcTemplate.queryForList("select name from users where id = ?", "2");
+
+        assertEquals(2, dataSource.getSlowQueryCount());
+        assertThat(dataSource.getExplainPlans()).containsOnlyKeys("select name from users where id = ?");
+        assertThat(dataSource.getExplainPlans().get("select name from users where id = ?")).containsIgnoringCase("users");
+    }
+}
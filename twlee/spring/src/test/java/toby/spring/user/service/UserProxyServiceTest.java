@@ -24,6 +24,7 @@ import java.util.Arrays;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.assertj.core.api.Assertions.fail;
 import static toby.spring.user.UserFixture.*;
 
@@ -47,6 +48,7 @@ class UserProxyServiceTest {
     @BeforeEach
     void setUp() {
         userList = Arrays.asList(NON_USER1, UP_USER1, NON_USER2, UP_USER2);
+        mailSender.getTargets().clear();
     }
 
     @Test
@@ -56,25 +58,22 @@ class UserProxyServiceTest {
             userDao.add(user);
         }
         TransactionHandler handler = new TransactionHandler(
-                new TestUserService(userDao, dataSource, mailSender, userList.get(3).getId()),
+                failingAfterFirstBatch(),
                 transactionManager,
                 "upgradeLevels");
         UserService userService = (UserService) Proxy.newProxyInstance(
                 getClass().getClassLoader(),
                 new Class[]{UserService.class},
                 handler);
-        try {
-            userService.upgradeLevels();
-        } catch (Exception e) {
-            checkLevelUpgraded(userList.get(0), false);
-            checkLevelUpgraded(userList.get(1), false);
-            checkLevelUpgraded(userList.get(2), false);
-            checkLevelUpgraded(userList.get(3), false);
-
-            // 메일 발송 이력은 롤백이 안됨...
-            List<String> targets = mailSender.getTargets();
-            assertThat(targets.size()).isEqualTo(1);
-        }
+
+        assertThatThrownBy(userService::upgradeLevels).isInstanceOf(TestUserService.TestUserServiceException.class);
+
+        // up1 의 묶음은 이미 DB 에 반영됐지만 함께 롤백되고, 메일은 커밋된 뒤에만 보내므로 보내지 않는다
+        checkLevelUpgraded(userList.get(0), false);
+        checkLevelUpgraded(userList.get(1), false);
+        checkLevelUpgraded(userList.get(2), false);
+        checkLevelUpgraded(userList.get(3), false);
+        assertThat(mailSender.getTargets()).isEmpty();
     }
 
     @Test
@@ -83,16 +82,14 @@ class UserProxyServiceTest {
         for (User user : userList) {
             userDao.add(user);
         }
-        try {
-            UserService userService = new TestUserService(userDao, dataSource, mailSender, userList.get(3).getId());
-            userService.upgradeLevels();
-        } catch (Exception e) {
-            System.out.println("exception!");
-            // exception이 발생했는데 upgrade 되면 안됨
-            checkLevelUpgraded(userList.get(1), false);
-            List<String> targets = mailSender.getTargets();
-            assertThat(targets.size()).isEqualTo(1);
-        }
+        UserService userService = failingAfterFirstBatch();
+
+        assertThatThrownBy(userService::upgradeLevels).isInstanceOf(TestUserService.TestUserServiceException.class);
+
+        // 트랜잭션이 없으므로 먼저 반영한 up1 의 묶음은 남고 메일도 나간다
+        checkLevelUpgraded(userList.get(1), true);
+        checkLevelUpgraded(userList.get(3), false);
+        assertThat(mailSender.getTargets()).containsExactly(userList.get(1).getEmail());
     }
 
     @Autowired
@@ -107,17 +104,14 @@ class UserProxyServiceTest {
         }
         TxProxyFactoryBean factoryBean = context.getBean("&userService", TxProxyFactoryBean.class);
         assertThat(factoryBean).isInstanceOf(TxProxyFactoryBean.class);
-        factoryBean.setTarget(new TestUserService(userDao, dataSource, mailSender, userList.get(3).getId()));
+        factoryBean.setTarget(failingAfterFirstBatch());
         UserService userService = (UserService) factoryBean.getObject();
-        try {
-            userService.upgradeLevels();
-        } catch (Exception e) {
-            System.out.println("exception!");
-        }
+
+        assertThatThrownBy(userService::upgradeLevels).isInstanceOf(TestUserService.TestUserServiceException.class);
+
         // exception이 발생했는데 upgrade 되면 안됨
-        List<String> targets = mailSender.getTargets();
-        assertThat(targets.size()).isEqualTo(1);
         checkLevelUpgraded(userList.get(1), false);
+        assertThat(mailSender.getTargets()).isEmpty();
     }
 
     @DirtiesContext
@@ -182,6 +176,13 @@ class UserProxyServiceTest {
         testUserServiceImpl.getAll();
     }
 
+    // 한 명씩 반영하므로 up2 에서 실패하기 전에 up1 의 묶음이 먼저 DB 에 반영된다
+    private TestUserService failingAfterFirstBatch() {
+        TestUserService userService = new TestUserService(userDao, dataSource, mailSender, userList.get(3).getId());
+        userService.setUpgradeBatchSize(1);
+        return userService;
+    }
+
     private void checkLevelUpgraded(User user, boolean upgraded) {
         User userUpgrade = userDao.get(user.getId());
         if (upgraded) {
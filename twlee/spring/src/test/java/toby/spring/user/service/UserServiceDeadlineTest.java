@@ -0,0 +1,101 @@
+package toby.spring.user.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.mail.MailSender;
+import org.springframework.mail.SimpleMailMessage;
+import toby.spring.user.config.AppContext;
+import toby.spring.user.dao.UserDao;
+import toby.spring.user.dao.UserSqlServiceDao;
+import toby.spring.user.domain.Level;
+import toby.spring.user.domain.User;
+import toby.spring.user.sqlservice.SimpleSqlService;
+
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static toby.spring.user.service.UserServiceImpl.MIN_LOGCOUNT_FOR_SILVER;
+
+class UserServiceDeadlineTest {
+    private EmbeddedDatabase db;
+    private UserDao userDao;
+    private UserServiceImpl userServiceImpl;
+
+    @BeforeEach
+    void setUp() {
+        db = new EmbeddedDatabaseBuilder()
+                .generateUniqueName(true)
+                .setType(EmbeddedDatabaseType.H2)
+                .addScript("schema.sql")
+                .build();
+        userDao = new UserSqlServiceDao(db, new SimpleSqlService());
+        userDao.addAll(Arrays.asList(
+                new User("deadline1", "마감1", "p1", Level.BASIC, MIN_LOGCOUNT_FOR_SILVER, 0, "deadline1@email.co.kr"),
+                new User("deadline2", "마감2", "p2", Level.BASIC, MIN_LOGCOUNT_FOR_SILVER, 0, "deadline2@email.co.kr")));
+
+        // 메일 한 통에 300ms 가 걸리는 느린 메일 서버
+        userServiceImpl = new UserServiceImpl(userDao, db, new SlowMailSender(300));
+        userServiceImpl.setUpgradeBatchSize(1);
+    }
+
+    @AfterEach
+    void tearDown() {
+        db.shutdown();
+    }
+
+    @Test
+    void serviceCallFailsAfterDeadline() {
+        UserService userService = withDeadline(userServiceImpl, 100);
+
+        // 첫 메일을 보내는 동안 마감이 지나서 다음 DB 작업은 실행되지 않는다
+        assertThatThrownBy(userService::upgradeLevels).isInstanceOf(QueryTimeoutException.class);
+        assertEquals(Level.BASIC, userDao.get("deadline2").getLevel());
+    }
+
+    @Test
+    void serviceCallWithinDeadline() {
+        UserService userService = withDeadline(userServiceImpl, 10_000);
+
+        userService.upgradeLevels();
+
+        assertEquals(Level.SILVER, userDao.get("deadline1").getLevel());
+        assertEquals(Level.SILVER, userDao.get("deadline2").getLevel());
+    }
+
+    private UserService withDeadline(UserService target, long timeoutMillis) {
+        ProxyFactory proxyFactory = new ProxyFactory(target);
+        proxyFactory.addAdvisor(AppContext.deadlineAdvisor(timeoutMillis));
+        return (UserService) proxyFactory.getProxy();
+    }
+
+    private static class SlowMailSender implements MailSender {
+        private final long delayMillis;
+
+        private SlowMailSender(long delayMillis) {
+            this.delayMillis = delayMillis;
+        }
+
+        @Override
+        public void send(SimpleMailMessage simpleMessage) {
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void send(SimpleMailMessage... simpleMessages) {
+            for (SimpleMailMessage simpleMessage : simpleMessages) {
+                send(simpleMessage);
+            }
+        }
+    }
+}
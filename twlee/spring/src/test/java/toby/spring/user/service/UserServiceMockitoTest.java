@@ -3,19 +3,30 @@ package toby.spring.user.service;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mail.SimpleMailMessage;
 import toby.spring.user.dao.UserDao;
+import toby.spring.user.domain.Level;
 import toby.spring.user.domain.User;
 
 import javax.sql.DataSource;
 import java.util.Arrays;
 import java.util.List;
+import java.util.function.Consumer;
 
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.Mockito.*;
 import static toby.spring.user.UserFixture.*;
+import static toby.spring.user.service.UserServiceImpl.MIN_LOGCOUNT_FOR_SILVER;
+import static toby.spring.user.service.UserServiceImpl.MIN_RECOMMEND_FOR_GOLD;
 
 @SpringBootTest
 @ExtendWith(MockitoExtension.class)
@@ -42,10 +53,73 @@ class UserServiceMockitoTest {
 
     @Test
     void mockitoUpgradeLevels() {
-        when(userDao.getAll()).thenReturn(userList);
+        doAnswer(invocation -> {
+            Consumer<User> action = invocation.getArgument(2);
+            userList.forEach(action);
+            return null;
+        }).when(userDao).findUpgradeCandidates(anyInt(), anyInt(), any());
 
         userServiceImpl.upgradeLevels();
 
-        verify(userDao, times(3)).update(any(User.class));
+        verify(userDao).updateLevels(argThat(users -> users.size() == 3));
+        verify(userDao, never()).updateAll(any());
+        verify(userDao, never()).update(any(User.class));
+        verify(userDao, never()).getAll();
+        verify(userDao, never()).forEach(any());
+    }
+
+    @Test
+    void mockitoUpgradeMailsAfterFlush() {
+        List<User> candidates = Arrays.asList(
+                new User("flush1", "반영1", "p1", Level.BASIC, MIN_LOGCOUNT_FOR_SILVER, 0, "flush1@email.co.kr"),
+                new User("flush2", "반영2", "p2", Level.SILVER, 0, MIN_RECOMMEND_FOR_GOLD, "flush2@email.co.kr"));
+        doAnswer(invocation -> {
+            Consumer<User> action = invocation.getArgument(2);
+            candidates.forEach(action);
+            return null;
+        }).when(userDao).findUpgradeCandidates(anyInt(), anyInt(), any());
+
+        userServiceImpl.upgradeLevels();
+
+        InOrder inOrder = inOrder(userDao, mailSender);
+        inOrder.verify(userDao).updateLevels(argThat(users -> users.size() == 2));
+        inOrder.verify(mailSender, times(2)).send(any(SimpleMailMessage.class));
+    }
+
+    @Test
+    void mockitoUpgradeLevelsInBulk() {
+        List<User> candidates = Arrays.asList(
+                new User("bulk1", "벌크1", "p1", Level.BASIC, MIN_LOGCOUNT_FOR_SILVER, 0, "bulk1@email.co.kr"),
+                new User("bulk2", "벌크2", "p2", Level.SILVER, 0, MIN_RECOMMEND_FOR_GOLD, "bulk2@email.co.kr"));
+        doAnswer(invocation -> {
+            Consumer<User> action = invocation.getArgument(2);
+            candidates.forEach(action);
+            return null;
+        }).when(userDao).lockUpgradeCandidates(anyInt(), anyInt(), any());
+        when(userDao.upgradeLevels(anyCollection())).thenReturn(2);
+
+        userServiceImpl.upgradeLevelsInBulk();
+
+        // 잠근 대상만 넘긴다
+        verify(userDao).upgradeLevels(argThat(users -> users.size() == 2));
+        verify(userDao, never()).updateLevels(any());
+        assertEquals(Level.SILVER, candidates.get(0).getLevel());
+        assertEquals(Level.GOLD, candidates.get(1).getLevel());
+        verify(mailSender, times(2)).send(any(SimpleMailMessage.class));
+    }
+
+    @Test
+    void mockitoUpgradeLevelsInBulkDetectsConcurrentChange() {
+        when(userDao.upgradeLevels(anyCollection())).thenReturn(1);
+
+        assertThatThrownBy(() -> userServiceImpl.upgradeLevelsInBulk()).isInstanceOf(IllegalStateException.class);
+        verify(mailSender, never()).send(any(SimpleMailMessage.class));
+    }
+
+    @Test
+    void rejectDaoSpanningMultipleDatabases() {
+        when(userDao.spansMultipleDatabases()).thenReturn(true);
+
+        assertThatThrownBy(() -> new UserServiceImpl(userDao, dataSource, mailSender)).isInstanceOf(IllegalArgumentException.class);
     }
 }